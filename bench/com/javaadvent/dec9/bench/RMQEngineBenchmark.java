@@ -0,0 +1,173 @@
+package com.javaadvent.dec9.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javaadvent.dec9.rmq.RMQBlockEngine;
+import com.javaadvent.dec9.rmq.RMQCompactSegmentTree;
+import com.javaadvent.dec9.rmq.RMQEngine;
+import com.javaadvent.dec9.rmq.RMQSegmentTree;
+import com.javaadvent.dec9.rmq.RMQSparseTable;
+import com.javaadvent.dec9.rmq.RMQSuccinctIndex;
+
+/**
+ * Construction and single query of the RMQ engines, and single update of those that support updates
+ *
+ * Queries and updates cycle through QUERIES pre generated operations, so the measured code is only the engine.
+ * The array is larger than the caches for the default sizes, so the numbers include the memory misses
+ *
+ * Interval lengths only matter to queries, so they are a parameter of QueryState alone, and construction and
+ * update are not run once per interval length. The sparse table and the succinct index are read only, so updates
+ * run on an UpdateState, whose engines are the updatable ones
+ *
+ * @author florin.bunau
+ * See : http://openjdk.java.net/projects/code-tools/jmh/
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RMQEngineBenchmark {
+
+    /**
+     * Pre generated operations, a power of 2
+     */
+    private static final int QUERIES = 1 << 16;
+
+    /**
+     * Engine over a random array
+     */
+    @State(Scope.Thread)
+    public static class EngineState {
+
+        @Param({ "RMQSegmentTree", "RMQCompactSegmentTree", "RMQBlockEngine", "RMQSparseTable", "RMQSuccinctIndex" })
+        public String engine;
+
+        @Param({ "100000", "10000000" })
+        public int arraySize;
+
+        private int[] values;
+
+        private RMQEngine rmq;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            values = Workload.values(arraySize);
+            rmq = build();
+        }
+
+        private RMQEngine build() {
+            return RMQEngineBenchmark.build(engine, values);
+        }
+    }
+
+    /**
+     * Updatable engine over a random array, and updates to apply to it
+     */
+    @State(Scope.Thread)
+    public static class UpdateState {
+
+        @Param({ "RMQSegmentTree", "RMQCompactSegmentTree", "RMQBlockEngine" })
+        public String engine;
+
+        @Param({ "100000", "10000000" })
+        public int arraySize;
+
+        private RMQEngine rmq;
+
+        private int[] updateIndexes = new int[QUERIES];
+        private int[] updateValues = new int[QUERIES];
+
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            rmq = build(engine, Workload.values(arraySize));
+
+            SplittableRandom random = new SplittableRandom(Workload.SEED + 3);
+            for (int k = 0; k < QUERIES; ++k) {
+                updateIndexes[k] = random.nextInt(arraySize);
+                updateValues[k] = random.nextInt(Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    private static RMQEngine build(String engine, int[] values) {
+        if ("RMQCompactSegmentTree".equals(engine)) {
+            return new RMQCompactSegmentTree(values);
+        }
+        if ("RMQBlockEngine".equals(engine)) {
+            return new RMQBlockEngine(values);
+        }
+        if ("RMQSparseTable".equals(engine)) {
+            return new RMQSparseTable(values);
+        }
+        if ("RMQSuccinctIndex".equals(engine)) {
+            return new RMQSuccinctIndex(values);
+        }
+        return new RMQSegmentTree(values);
+    }
+
+    /**
+     * Query intervals over the array of an EngineState
+     */
+    @State(Scope.Thread)
+    public static class QueryState {
+
+        @Param({ "SHORT", "MEDIUM", "LONG" })
+        public Workload.Intervals intervals;
+
+        private int[] lefts = new int[QUERIES];
+        private int[] rights = new int[QUERIES];
+
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(EngineState engineState) {
+            SplittableRandom random = new SplittableRandom(Workload.SEED + 2);
+            for (int k = 0; k < QUERIES; ++k) {
+                long interval = intervals.next(random, engineState.arraySize);
+                lefts[k] = (int) interval;
+                rights[k] = (int) (interval >>> 32);
+            }
+        }
+    }
+
+    /**
+     * Builds a tree over the array
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public RMQEngine construction(EngineState engineState) {
+        return engineState.build();
+    }
+
+    @Benchmark
+    public int query(EngineState engineState, QueryState queryState) {
+        int k = queryState.next++ & (QUERIES - 1);
+        return engineState.rmq.query(queryState.lefts[k], queryState.rights[k]);
+    }
+
+    @Benchmark
+    public void update(UpdateState updateState) {
+        int k = updateState.next++ & (QUERIES - 1);
+        updateState.rmq.update(updateState.updateIndexes[k], updateState.updateValues[k]);
+    }
+}
@@ -0,0 +1,97 @@
+package com.javaadvent.dec9.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.javaadvent.dec9.model.Task;
+import com.javaadvent.dec9.result.TaskResultHandler;
+import com.javaadvent.dec9.rmq.RMQCompactSegmentTree;
+import com.javaadvent.dec9.solver.TaskSolver;
+
+/**
+ * TaskSolver.solve over ranges of a task, the unit of work of the processors
+ *
+ * Scores are per operation of the range. The results go to a Blackhole, so they are not optimized away
+ *
+ * @author florin.bunau
+ * See : http://openjdk.java.net/projects/code-tools/jmh/
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TaskSolverBenchmark {
+
+    /**
+     * Operations in the solved range, the size of a fork / join leaf
+     */
+    private static final int RANGE = 4096;
+
+    /**
+     * Operations in the task, ranges are solved one after the other
+     */
+    private static final int TASK_SIZE = 64 * RANGE;
+
+    @Param({ "10000000" })
+    public int arraySize;
+
+    @Param({ "SHORT", "MEDIUM", "LONG", "CLUSTERED" })
+    public Workload.Intervals intervals;
+
+    /**
+     * Fraction of the operations that are updates
+     */
+    @Param({ "0", "0.01" })
+    public double updateRatio;
+
+    /**
+     * Only makes a difference for CLUSTERED intervals, the others are never dense enough
+     */
+    @Param({ "true", "false" })
+    public boolean offlineBatch;
+
+    private TaskSolver solver;
+
+    private Task task;
+
+    private int from;
+
+    @Setup(Level.Trial)
+    public void setUp(final Blackhole blackhole) {
+        int[] values = Workload.values(arraySize);
+        task = new Task(Workload.operations(TASK_SIZE, arraySize, intervals, updateRatio), Task.TaskType.XXL);
+
+        TaskResultHandler resultHandler = new TaskResultHandler(new CountDownLatch(1)) {
+            @Override
+            public void reportQueryResult(Task task, int operationIndex, int minIndex) {
+                blackhole.consume(minIndex);
+            }
+        };
+        solver = new TaskSolver(new RMQCompactSegmentTree(values), resultHandler);
+        solver.setOfflineBatch(offlineBatch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RANGE)
+    public void solveRange() {
+        solver.solve(task, from, from + RANGE);
+        from = (from + RANGE) % TASK_SIZE;
+    }
+}
@@ -0,0 +1,101 @@
+package com.javaadvent.dec9.bench;
+
+import java.util.SplittableRandom;
+
+import com.javaadvent.dec9.model.OperationBatch;
+
+/**
+ * Random data for the benchmarks. Everything is generated in the setup, outside of the measured code
+ *
+ * Public, the classes generated by JMH live in another package
+ *
+ * @author florin.bunau
+ */
+public final class Workload {
+
+    static final long SEED = 100;
+
+    /**
+     * Consecutive queries of a CLUSTERED workload falling in the same window, and values in the window
+     */
+    static final int CLUSTER = 256;
+
+    private Workload() {
+    }
+
+    /**
+     * Distribution of the query interval lengths
+     */
+    public enum Intervals {
+        /**
+         * Up to 100 values, fits a few cache lines
+         */
+        SHORT(100),
+        /**
+         * Up to 10000 values, same as TaskProducer
+         */
+        MEDIUM(10000),
+        /**
+         * Anywhere in the array
+         */
+        LONG(Integer.MAX_VALUE),
+        /**
+         * Anywhere in a window of CLUSTER values, which moves every CLUSTER queries.
+         * Dense enough for the offline sweep of TaskSolver
+         */
+        CLUSTERED(CLUSTER);
+
+        private final int maxLength;
+
+        private Intervals(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        /**
+         * @return Random left index of an interval in an array of n values, right index in the high 32 bits
+         */
+        long next(SplittableRandom random, int n) {
+            int length = 1 + random.nextInt(Math.min(maxLength, n));
+            int left = random.nextInt(n - length + 1);
+            return ((long) (left + length - 1) << 32) | left;
+        }
+    }
+
+    static int[] values(int n) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[] values = new int[n];
+        for (int i = 0; i < n; ++i) {
+            values[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+        return values;
+    }
+
+    /**
+     * @param size Number of operations
+     * @param n Size of the array
+     * @param intervals Lengths of the queries
+     * @param updateRatio Fraction of the operations that are updates
+     */
+    static OperationBatch operations(int size, int n, Intervals intervals, double updateRatio) {
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        OperationBatch operations = new OperationBatch(size);
+        int window = 0;
+        for (int k = 0; k < size; ++k) {
+            if (updateRatio > 0 && random.nextDouble() < updateRatio) {
+                operations.addUpdate(random.nextInt(n), random.nextInt(Integer.MAX_VALUE));
+            }
+            else if (intervals == Intervals.CLUSTERED) {
+                if (k % CLUSTER == 0) {
+                    window = random.nextInt(Math.max(1, n - CLUSTER + 1));
+                }
+                long interval = intervals.next(random, Math.min(CLUSTER, n));
+                operations.addQuery(window + (int) interval, window + (int) (interval >>> 32));
+            }
+            else {
+                long interval = intervals.next(random, n);
+                operations.addQuery((int) interval, (int) (interval >>> 32));
+            }
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,371 @@
+package com.javaadvent.dec9;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import com.javaadvent.dec9.model.OperationBatch;
+import com.javaadvent.dec9.model.Task;
+import com.javaadvent.dec9.processor.AbstractTaskProcessor;
+import com.javaadvent.dec9.producer.TaskFile;
+import com.javaadvent.dec9.producer.TaskProducer;
+import com.javaadvent.dec9.producer.TaskSource;
+import com.javaadvent.dec9.result.TaskResultHandler;
+import com.javaadvent.dec9.rmq.RMQCompactSegmentTree;
+import com.javaadvent.dec9.rmq.RMQConcurrentEngine;
+import com.javaadvent.dec9.rmq.RMQEngine;
+import com.javaadvent.dec9.solver.TaskSolver;
+
+/**
+ * Macro benchmark of the processors, over a sweep of parallelism levels
+ *
+ * The workload is generated once, before any measurement, and every run solves the same tasks.
+ * For every processor and parallelism level, the runner does warmup rounds, then measured rounds, and reports
+ *  - throughput, in operations per second, of the median round
+ *  - p50 / p99 latency per TaskType, from submitting a task to its taskDone, over all measured rounds
+ *  - scaling efficiency : throughput / (parallelism * throughput at parallelism 1), 1 is linear scaling
+ * Results are printed and written as JSON, so runs on different machines or versions can be compared.
+ *
+ * Configured with system properties :
+ *  - bench.processors     : comma separated processor names, default all
+ *  - bench.parallelism    : comma separated parallelism levels, default 1, 2, 4 ... up to the number of cores
+ *  - bench.warmupRounds   : default 1
+ *  - bench.rounds         : measured rounds, default 3
+ *  - bench.arraySize      : default 10000000, the indexes of tasks.txt tasks go up to that
+ *  - bench.updateRatio    : default 0.01
+ *  - bench.workload       : workload file to use instead of tasks.txt, see TaskFile
+ *  - bench.output         : JSON output file, default scaling.json
+ *
+ * Processors without a (TaskSolver, int parallelism) constructor only run at parallelism 1
+ *
+ * @author florin.bunau
+ */
+public class ScalingBenchmark {
+
+    private static final long RAND_SEED = 100;
+
+    /**
+     * Package where the task processors implementations reside
+     */
+    private static final String PROCESSOR_PACKAGE = "com.javaadvent.dec9.processor.";
+
+    private static final String[] PROCESSORS = { "TaskProcessorSimple", "TaskProcessorPool", "TaskProcessorSizeAware", "TaskProcessorFJ", "TaskProcessorFJAsync", "TaskProcessorAdaptive", "TaskProcessorVirtual" };
+
+    private final String[] processorNames = System.getProperty("bench.processors", String.join(",", PROCESSORS)).split(",");
+    private final int[] parallelismLevels = parallelismLevels(System.getProperty("bench.parallelism"));
+    private final int warmupRounds = Integer.getInteger("bench.warmupRounds", 1);
+    private final int rounds = Integer.getInteger("bench.rounds", 3);
+    private final int arraySize = Integer.getInteger("bench.arraySize", 10000000);
+    private final double updateRatio = Double.parseDouble(System.getProperty("bench.updateRatio", "0.01"));
+    private final String workloadFile = System.getProperty("bench.workload");
+    private final String outputFile = System.getProperty("bench.output", "scaling.json");
+
+    /**
+     * Engine shared by all runs. Updates of a run are seen by the next ones, the value distribution stays the same
+     */
+    private RMQEngine rmq;
+
+    /**
+     * Tasks of the workload, in submission order
+     */
+    private final List<Task> tasks = new ArrayList<>();
+
+    /**
+     * Position of every task in tasks, to record its timestamps without a lock
+     */
+    private final Map<Task, Integer> taskIndexes = new IdentityHashMap<>();
+
+    private long operationCount;
+
+    public static void main(String[] args) throws IOException {
+        ScalingBenchmark benchmark = new ScalingBenchmark();
+        benchmark.init();
+        List<Result> results = benchmark.run();
+        benchmark.writeJson(results);
+    }
+
+    /**
+     * @return Parsed levels, or 1, 2, 4 ... up to the number of cores, which is always included
+     */
+    private static int[] parallelismLevels(String levels) {
+        TreeSet<Integer> sweep = new TreeSet<>();
+        if (levels != null) {
+            for (String level : levels.split(",")) {
+                sweep.add(Integer.parseInt(level.trim()));
+            }
+        }
+        else {
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int p = 1; p < cores; p *= 2) {
+                sweep.add(p);
+            }
+            sweep.add(cores);
+        }
+        int[] result = new int[sweep.size()];
+        int k = 0;
+        for (int p : sweep) {
+            result[k++] = p;
+        }
+        return result;
+    }
+
+    /**
+     * Builds the engine and generates the workload
+     */
+    private void init() throws IOException {
+        SplittableRandom random = new SplittableRandom(RAND_SEED);
+        int[] values = new int[arraySize];
+        for (int i = 0; i < arraySize; ++i) {
+            values[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+        rmq = new RMQConcurrentEngine(new RMQCompactSegmentTree(values, ForkJoinPool.commonPool()));
+
+        TaskSource source = workloadFile != null ? TaskFile.open(Paths.get(workloadFile)) : new TaskProducer(updateRatio);
+        Task task;
+        while ((task = source.getNext()) != null) {
+            checkIndexes(task);
+            taskIndexes.put(task, tasks.size());
+            tasks.add(task);
+            operationCount += task.getOperations().size();
+        }
+        System.out.println(tasks.size() + " tasks, " + operationCount + " operations, array of " + arraySize);
+    }
+
+    private void checkIndexes(Task task) {
+        OperationBatch operations = task.getOperations();
+        for (int k = 0; k < operations.size(); ++k) {
+            byte type = operations.getType(k);
+            if (type != OperationBatch.QUERY && type != OperationBatch.UPDATE) {
+                // Aggregations index the AggregationTree, not the array
+                continue;
+            }
+            int last = type == OperationBatch.QUERY ? operations.getRight(k) : operations.getIndex(k);
+            if (operations.isWide() || last >= arraySize) {
+                throw new IllegalArgumentException("Task " + tasks.size() + " goes beyond the array of " + arraySize
+                                                   + " values, see bench.arraySize");
+            }
+        }
+    }
+
+    /**
+     * Runs every processor at every parallelism level
+     */
+    private List<Result> run() {
+        List<Result> results = new ArrayList<>();
+        for (String processorName : processorNames) {
+            double baseline = 0;
+            for (int parallelism : parallelismLevels) {
+                if (parallelism > 1 && !isParallel(processorName)) {
+                    continue;
+                }
+                Result result = run(processorName, parallelism);
+                if (parallelism == 1) {
+                    baseline = result.opsPerSecond;
+                }
+                if (baseline > 0) {
+                    result.scalingEfficiency = result.opsPerSecond / (parallelism * baseline);
+                }
+                System.out.println(result);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    private static boolean isParallel(String processorName) {
+        try {
+            Class.forName(PROCESSOR_PACKAGE + processorName).getConstructor(TaskSolver.class, int.class);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private Result run(String processorName, int parallelism) {
+        Result result = new Result(processorName, parallelism);
+        long[] latencies = new long[rounds * tasks.size()];
+
+        for (int round = 0; round < warmupRounds + rounds; ++round) {
+            long[] submitted = new long[tasks.size()];
+            long[] finished = new long[tasks.size()];
+            long elapsed = runRound(processorName, parallelism, submitted, finished);
+
+            if (round >= warmupRounds) {
+                int measured = round - warmupRounds;
+                result.elapsedNanos[measured] = elapsed;
+                for (int t = 0; t < tasks.size(); ++t) {
+                    latencies[measured * tasks.size() + t] = finished[t] - submitted[t];
+                }
+            }
+        }
+
+        long[] sortedElapsed = result.elapsedNanos.clone();
+        Arrays.sort(sortedElapsed);
+        result.opsPerSecond = operationCount * 1e9 / sortedElapsed[rounds / 2];
+
+        // Latencies by type, over all measured rounds
+        for (Task.TaskType taskType : Task.TaskType.values()) {
+            long[] ofType = new long[latencies.length];
+            int count = 0;
+            for (int k = 0; k < latencies.length; ++k) {
+                if (tasks.get(k % tasks.size()).getTaskType() == taskType) {
+                    ofType[count++] = latencies[k];
+                }
+            }
+            if (count > 0) {
+                long[] sorted = Arrays.copyOf(ofType, count);
+                Arrays.sort(sorted);
+                result.latencies.put(taskType, new long[] { count, percentile(sorted, 50), percentile(sorted, 99) });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Solves the whole workload once
+     *
+     * @return Elapsed time, in nanos
+     */
+    private long runRound(String processorName, int parallelism, final long[] submitted, final long[] finished) {
+        CountDownLatch allTasksDoneLatch = new CountDownLatch(tasks.size());
+        TaskResultHandler resultHandler = new TaskResultHandler(allTasksDoneLatch) {
+            @Override
+            public void taskDone(Task task) {
+                finished[taskIndexes.get(task)] = System.nanoTime();
+                super.taskDone(task);
+            }
+        };
+        TaskSolver taskSolver = new TaskSolver(rmq, resultHandler);
+        AbstractTaskProcessor processor = newProcessor(processorName, parallelism, taskSolver);
+
+        long start = System.nanoTime();
+        for (int t = 0; t < tasks.size(); ++t) {
+            submitted[t] = System.nanoTime();
+            processor.process(tasks.get(t));
+        }
+        try {
+            allTasksDoneLatch.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        long elapsed = System.nanoTime() - start;
+        processor.shutdown();
+        return elapsed;
+    }
+
+    private static AbstractTaskProcessor newProcessor(String processorName, int parallelism, TaskSolver taskSolver) {
+        try {
+            Class<?> processorClass = Class.forName(PROCESSOR_PACKAGE + processorName);
+            if (isParallel(processorName)) {
+                Constructor<?> constructor = processorClass.getConstructor(TaskSolver.class, int.class);
+                return (AbstractTaskProcessor) constructor.newInstance(taskSolver, parallelism);
+            }
+            return (AbstractTaskProcessor) processorClass.getConstructor(TaskSolver.class).newInstance(taskSolver);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Can not build processor " + processorName, e);
+        }
+    }
+
+    /**
+     * Nearest rank percentile
+     */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private void writeJson(List<Result> results) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"jvm\": \"").append(System.getProperty("java.vm.name")).append(' ')
+            .append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"availableProcessors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"arraySize\": ").append(arraySize).append(",\n");
+        json.append("  \"updateRatio\": ").append(workloadFile != null ? "null" : String.valueOf(updateRatio)).append(",\n");
+        json.append("  \"tasks\": ").append(tasks.size()).append(",\n");
+        json.append("  \"operations\": ").append(operationCount).append(",\n");
+        json.append("  \"warmupRounds\": ").append(warmupRounds).append(",\n");
+        json.append("  \"rounds\": ").append(rounds).append(",\n");
+        json.append("  \"results\": [");
+        for (int r = 0; r < results.size(); ++r) {
+            json.append(r == 0 ? "\n" : ",\n");
+            results.get(r).appendJson(json);
+        }
+        json.append("\n  ]\n}\n");
+
+        try (PrintWriter out = new PrintWriter(outputFile, "UTF-8")) {
+            out.print(json);
+        }
+        System.out.println("Results written to " + outputFile);
+    }
+
+    /**
+     * Measures of one processor at one parallelism level
+     */
+    private class Result {
+        final String processorName;
+        final int parallelism;
+        final long[] elapsedNanos = new long[rounds];
+        double opsPerSecond;
+        /**
+         * Only set once the parallelism 1 baseline is known
+         */
+        double scalingEfficiency = Double.NaN;
+        /**
+         * Task count, p50 and p99 latency in nanos, by type
+         */
+        final Map<Task.TaskType, long[]> latencies = new EnumMap<>(Task.TaskType.class);
+
+        Result(String processorName, int parallelism) {
+            this.processorName = processorName;
+            this.parallelism = parallelism;
+        }
+
+        void appendJson(StringBuilder json) {
+            json.append("    {\"processor\": \"").append(processorName).append("\", \"parallelism\": ").append(parallelism);
+            json.append(", \"opsPerSecond\": ").append(Math.round(opsPerSecond));
+            json.append(", \"scalingEfficiency\": ")
+                .append(Double.isNaN(scalingEfficiency) ? "null" : String.format(Locale.ROOT, "%.3f", scalingEfficiency));
+            json.append(", \"elapsedMillis\": [");
+            for (int r = 0; r < elapsedNanos.length; ++r) {
+                json.append(r == 0 ? "" : ", ").append(elapsedNanos[r] / 1000000);
+            }
+            json.append("], \"latencyMicros\": {");
+            boolean first = true;
+            for (Map.Entry<Task.TaskType, long[]> entry : latencies.entrySet()) {
+                long[] latency = entry.getValue();
+                json.append(first ? "" : ", ").append('"').append(entry.getKey().name()).append("\": {\"count\": ")
+                    .append(latency[0]).append(", \"p50\": ").append(latency[1] / 1000)
+                    .append(", \"p99\": ").append(latency[2] / 1000).append('}');
+                first = false;
+            }
+            json.append("}}");
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format(Locale.ROOT, "%-22s x%-3d %,14.0f ops/s", processorName, parallelism, opsPerSecond));
+            if (!Double.isNaN(scalingEfficiency)) {
+                s.append(String.format("  efficiency %.2f", scalingEfficiency));
+            }
+            for (Map.Entry<Task.TaskType, long[]> entry : latencies.entrySet()) {
+                s.append(String.format("  %s p50 %.2f p99 %.2f ms", entry.getKey().name(),
+                                       entry.getValue()[1] / 1e6, entry.getValue()[2] / 1e6));
+            }
+            return s.toString();
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package com.javaadvent.dec9;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
 
+import com.javaadvent.dec9.metrics.TaskMetrics;
 import com.javaadvent.dec9.model.Task;
 import com.javaadvent.dec9.processor.AbstractTaskProcessor;
-import com.javaadvent.dec9.producer.TaskProducer;
+import com.javaadvent.dec9.producer.StreamingTaskProducer;
+import com.javaadvent.dec9.producer.TaskFile;
+import com.javaadvent.dec9.producer.TaskFileReader;
+import com.javaadvent.dec9.producer.TaskSource;
 import com.javaadvent.dec9.result.TaskResultHandler;
-import com.javaadvent.dec9.rmq.RMQSegmentTree;
+import com.javaadvent.dec9.rmq.RMQEngine;
+import com.javaadvent.dec9.rmq.RMQCompactSegmentTree;
+import com.javaadvent.dec9.rmq.RMQConcurrentEngine;
 import com.javaadvent.dec9.solver.TaskSolver;
 
 /**
@@ -19,11 +29,15 @@ import com.javaadvent.dec9.solver.TaskSolver;
  * 
  *  - TaskProcessorSimple : simple sequential solving of tasks
  *  - TaskProcessorPool   : thread pool solving of tasks
+ *  - TaskProcessorSizeAware: thread pool solving of slices of tasks, small tasks first
  *  - TaskProcessorFJ     : fork/join (work stealing thread pool) solving of tasks
+ *  - TaskProcessorFJAsync: fork/join solving of tasks, without waiting for a task before taking the next one
+ *  - TaskProcessorAdaptive: picks inline, pool or fork/join solving per task type, from measured times
+ *  - TaskProcessorVirtual: a virtual thread per task, and per chunk of a large task
  *  
  *  This runner runs multiple times the implementations and measures their performance
  *  
- *  A task consists of a batch of Range Minimum Queries on a large integer array
+ *  A task consists of a batch of Range Minimum Queries on a large integer array, mixed with a few point updates
  * 
  * @author florin.bunau
  */
@@ -44,9 +58,17 @@ public class TestRunner {
     
     /**
      * How many tasks are in tasks.txt file
-     * We need this to know when we are done processing tasks
+     * We need this to know when we are done processing tasks. Parts of a task are counted once, with their task
      */
     private static final int TASKS_IN_TEST_FILE = 60;
+    /**
+     * Workload file to replay instead of tasks.txt, from -Dworkload=<file>. See TaskFile
+     */
+    private static final String WORKLOAD_FILE = System.getProperty("workload");
+    /**
+     * Fraction of the operations in a task that are point updates
+     */
+    private static final double UPDATE_RATIO = 0.01;
     /**
      * How many test runs each processor should get
      */
@@ -59,16 +81,24 @@ public class TestRunner {
     /**
      * Processors to run in the test
      */
-    private static String[] processorNameList = new String[] { "TaskProcessorSimple", "TaskProcessorPool", "TaskProcessorFJ" };
+    private static String[] processorNameList = new String[] { "TaskProcessorSimple", "TaskProcessorPool", "TaskProcessorSizeAware", "TaskProcessorFJ", "TaskProcessorFJAsync", "TaskProcessorAdaptive", "TaskProcessorVirtual" };
     
     /**
      * Array of integers on which we do RMQ queries
      */
     private int[] values = new int[LARGE_ARRAY_SIZE];
     /**
-     * Segment tree data structure used for efficient RMQ queries
+     * Segment tree data structure used for efficient RMQ queries. The bottom up, 2N sized variant
+     * Tasks update it while other tasks query it, so it is wrapped for concurrent use
+     * An RMQPersistentSegmentTree can be used instead, to give each task a consistent snapshot
+     * With UPDATE_RATIO = 0, a read only RMQSparseTable can be used as well, or an RMQSuccinctIndex to save memory
+     * Workloads repeating intervals can wrap it in an RMQCachedEngine. The random intervals here rarely repeat
+     */
+    private RMQEngine segmentTree;
+    /**
+     * Queue wait and service time of the tasks, by processor. Published as MXBeans, see TaskMetrics
      */
-    private RMQSegmentTree segmentTree;
+    private Map<String, TaskMetrics> metrics = new HashMap<>();
 
     
     public static void main(String[] args) {
@@ -92,7 +122,7 @@ public class TestRunner {
      */
     private void init() {
         initValuesArray();
-        segmentTree = new RMQSegmentTree(values);
+        segmentTree = new RMQConcurrentEngine(new RMQCompactSegmentTree(values, ForkJoinPool.commonPool()));
     }
     
     /**
@@ -110,11 +140,37 @@ public class TestRunner {
      * @param processorName Name of the processor to benchmark
      */
     private void run(String processorName) {
+        /**
+         * Build task producer. Large tasks are streamed in parts, a TaskProducer builds them whole instead
+         * A recorded workload is replayed instead if one is given, see TaskFile
+         */
+        TaskSource taskProducer;
+        int taskCount = TASKS_IN_TEST_FILE;
+        try {
+            if (WORKLOAD_FILE != null) {
+                TaskFileReader workload = TaskFile.open(Paths.get(WORKLOAD_FILE));
+                taskCount = workload.getTaskCount();
+                taskProducer = workload;
+            }
+            else {
+                taskProducer = new StreamingTaskProducer(UPDATE_RATIO);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
         /**
          * Build Processor
          */
-        CountDownLatch allTasksDoneLatch = new CountDownLatch(TASKS_IN_TEST_FILE);
-        TaskResultHandler resultHandler = new TaskResultHandler(allTasksDoneLatch);
+        CountDownLatch allTasksDoneLatch = new CountDownLatch(taskCount);
+        TaskMetrics processorMetrics = metrics.get(processorName);
+        if (processorMetrics == null) {
+            processorMetrics = new TaskMetrics(processorName);
+            processorMetrics.register();
+            metrics.put(processorName, processorMetrics);
+        }
+        TaskResultHandler resultHandler = new TaskResultHandler(allTasksDoneLatch, processorMetrics);
         TaskSolver taskSolver = new TaskSolver(segmentTree, resultHandler);
         AbstractTaskProcessor processor = null;
         try {
@@ -125,17 +181,6 @@ public class TestRunner {
             e.printStackTrace();
         }
 
-        /**
-         * Build task producer
-         */
-        TaskProducer taskProducer;
-        try {
-            taskProducer = new TaskProducer();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return;
-        }
-        
         /**
          * RUN test
          */
@@ -0,0 +1,50 @@
+package com.javaadvent.dec9.agg;
+
+/**
+ * What an aggregation tree computes over an interval
+ *
+ * Trees switch on the aggregation once per query or update, and run a loop written for it,
+ * so combining two nodes is an inlined Math.min or + instead of a call through an interface.
+ *
+ * @author florin.bunau
+ */
+public enum Aggregation {
+
+    /**
+     * Smallest value
+     */
+    MIN,
+
+    /**
+     * Largest value
+     */
+    MAX,
+
+    /**
+     * Sum of the values
+     */
+    SUM,
+
+    /**
+     * Index of the smallest value, the leftmost one on ties. Answered by queryIndex
+     */
+    ARG_MIN,
+
+    /**
+     * Index of the largest value, the leftmost one on ties. Answered by queryIndex
+     */
+    ARG_MAX,
+
+    /**
+     * Combined by a LongMonoid or a DoubleMonoid given to the tree. Called through the interface, so slower
+     */
+    MONOID;
+
+    /**
+     * @return true if queries answer an index rather than a value
+     */
+    public boolean isIndex() {
+        return this == ARG_MIN || this == ARG_MAX;
+    }
+
+}
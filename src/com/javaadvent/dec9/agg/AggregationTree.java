@@ -0,0 +1,89 @@
+package com.javaadvent.dec9.agg;
+
+/**
+ * Non recursive, bottom up segment tree aggregating intervals of a primitive array
+ *
+ * Same layout as RMQCompactSegmentTree: leaves are the values array itself, at positions [N .. 2N) of an
+ * implicit tree, and only the N - 1 internal nodes are stored. There is one subclass per primitive type,
+ * LongAggregationTree and DoubleAggregationTree, so values and nodes are never boxed.
+ *
+ * ARG_MIN and ARG_MAX trees keep every node's value and the index it is at side by side in one array,
+ * so comparing two nodes reads one cache line and does not jump back into values[]
+ *
+ * Like the RMQ engines, trees are not safe for concurrent updates, see ConcurrentAggregationTree
+ *
+ * Init   : O(N)
+ * Query  : O(log N)
+ * Update : O(log N)
+ *
+ * @author florin.bunau
+ * See : http://codeforces.com/blog/entry/18051
+ */
+public abstract class AggregationTree {
+
+    /**
+     * Most values a tree holds, so node ids up to 2N fit an int. Half of it for ARG_MIN and ARG_MAX,
+     * whose nodes take two slots
+     */
+    public static final int MAX_SIZE = 1 << 30;
+
+    /**
+     * What the tree computes
+     */
+    final Aggregation aggregation;
+
+    /**
+     * Number of values
+     */
+    final int n;
+
+    AggregationTree(Aggregation aggregation, int n) {
+        if (n > (aggregation.isIndex() ? MAX_SIZE / 2 : MAX_SIZE)) {
+            throw new IllegalArgumentException("Too many values for " + aggregation + ": " + n);
+        }
+        this.aggregation = aggregation;
+        this.n = n;
+    }
+
+    /**
+     * @return aggregation, if the tree can compute it without a monoid
+     */
+    static Aggregation builtIn(Aggregation aggregation) {
+        if (aggregation == Aggregation.MONOID) {
+            throw new IllegalArgumentException("MONOID trees are built from a monoid");
+        }
+        return aggregation;
+    }
+
+    /**
+     * Update the value at index i from the 64 bits of a set operation : the value itself for a LongAggregationTree,
+     * the raw bits of the value for a DoubleAggregationTree
+     */
+    public abstract void updateBits(int i, long bits);
+
+    /**
+     * @param i Left index
+     * @param j Right index
+     * @return Index of the minimum or maximum value in [i, j], the leftmost one on ties. Only for ARG_MIN and ARG_MAX
+     */
+    public abstract int queryIndex(int i, int j);
+
+    /**
+     * @return Length of the nodes array: N - 1 internal nodes, two slots each for ARG_MIN and ARG_MAX
+     */
+    int nodesLength() {
+        return Math.max(n, 1) * (aggregation.isIndex() ? 2 : 1);
+    }
+
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * @return Number of values
+     */
+    public int size() {
+        return n;
+    }
+
+}
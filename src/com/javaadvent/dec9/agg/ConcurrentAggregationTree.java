@@ -0,0 +1,134 @@
+package com.javaadvent.dec9.agg;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Makes an aggregation tree safe to query and update from many threads, like RMQConcurrentEngine does for RMQ engines
+ *
+ * Queries run as optimistic reads, validated against the lock stamp afterwards, and are retried under a read lock
+ * if a set slipped in. That matters for ARG_MIN and ARG_MAX trees: a node's value and index are two separate
+ * stores, and a query running during an update could see the value of one position with the index of another.
+ * Sets are serialized by the write lock.
+ *
+ * A torn read of a built in aggregation never fails: nodes only hold values of the array, sums of them and indexes
+ * within it. A monoid given by the caller may throw, or loop, on a mix of old and new nodes, so MONOID trees
+ * skip the optimistic read and always query under the read lock.
+ *
+ * @author florin.bunau
+ * See : http://docs.oracle.com/javase/8/docs/api/java/util/concurrent/locks/StampedLock.html
+ */
+public class ConcurrentAggregationTree {
+
+    /**
+     * Tree doing the actual work
+     */
+    private final AggregationTree tree;
+
+    /**
+     * Guards tree
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * False for MONOID trees, which are only read under the read lock
+     */
+    private final boolean optimistic;
+
+    public ConcurrentAggregationTree(AggregationTree tree) {
+        this.tree = tree;
+        this.optimistic = tree.getAggregation() != Aggregation.MONOID;
+    }
+
+    /**
+     * @return Index of the minimum or maximum value in [i, j], see AggregationTree.queryIndex
+     */
+    public int queryIndex(int i, int j) {
+        long stamp = optimistic ? lock.tryOptimisticRead() : 0;
+        if (stamp != 0) {
+            int result = tree.queryIndex(i, j);
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return tree.queryIndex(i, j);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return Aggregate of the values in [i, j], for a LongAggregationTree
+     */
+    public long queryLong(int i, int j) {
+        LongAggregationTree longTree = (LongAggregationTree) tree;
+        long stamp = optimistic ? lock.tryOptimisticRead() : 0;
+        if (stamp != 0) {
+            long result = longTree.query(i, j);
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return longTree.query(i, j);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return Aggregate of the values in [i, j], for a DoubleAggregationTree
+     */
+    public double queryDouble(int i, int j) {
+        DoubleAggregationTree doubleTree = (DoubleAggregationTree) tree;
+        long stamp = optimistic ? lock.tryOptimisticRead() : 0;
+        if (stamp != 0) {
+            double result = doubleTree.query(i, j);
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return doubleTree.query(i, j);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Update the value at index i, see AggregationTree.updateBits
+     */
+    public void updateBits(int i, long bits) {
+        long stamp = lock.writeLock();
+        try {
+            tree.updateBits(i, bits);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return True if the wrapped tree is a DoubleAggregationTree, and value aggregates are read with queryDouble
+     */
+    public boolean isDouble() {
+        return tree instanceof DoubleAggregationTree;
+    }
+
+    public Aggregation getAggregation() {
+        return tree.getAggregation();
+    }
+
+    /**
+     * @return Number of values
+     */
+    public int size() {
+        return tree.size();
+    }
+
+}
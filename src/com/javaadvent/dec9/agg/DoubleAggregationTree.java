@@ -0,0 +1,215 @@
+package com.javaadvent.dec9.agg;
+
+/**
+ * Aggregation tree over a double array : range min, max, sum, argmin, argmax, or a DoubleMonoid
+ *
+ * MIN, MAX, ARG_MIN and ARG_MAX compare keys instead of doubles : the bits of a double, with the bits
+ * after the sign flipped for negative values, order as longs like the doubles do. Comparing longs is a
+ * single instruction, where Math.min on doubles also has to order NaN and -0.0. Those aggregations are
+ * answered by a LongAggregationTree over the keys, which costs a long per value on top of the values.
+ *
+ * For SUM and MONOID, nodes[k] for 1 <= k < N holds the aggregate of its children 2k and 2k + 1.
+ * Values must not be NaN, it is neither smaller nor larger than anything
+ *
+ * @author florin.bunau
+ */
+public class DoubleAggregationTree extends AggregationTree {
+
+    /**
+     * An array of values to be queried and updated
+     */
+    public final double[] values;
+
+    /**
+     * Tree over the keys of the values, for MIN, MAX, ARG_MIN and ARG_MAX. null otherwise
+     */
+    private final LongAggregationTree keys;
+
+    /**
+     * Aggregates of the internal nodes, for SUM and MONOID. null otherwise
+     */
+    private final double[] nodes;
+
+    /**
+     * Combine operator of a MONOID tree, null otherwise
+     */
+    private final DoubleMonoid monoid;
+
+    /**
+     * @param values Values to be queried and updated
+     * @param aggregation What the tree computes, not MONOID
+     */
+    public DoubleAggregationTree(double[] values, Aggregation aggregation) {
+        this(values, builtIn(aggregation), null);
+    }
+
+    /**
+     * @param values Values to be queried and updated
+     * @param monoid Combine operator
+     */
+    public DoubleAggregationTree(double[] values, DoubleMonoid monoid) {
+        this(values, Aggregation.MONOID, monoid);
+    }
+
+    private DoubleAggregationTree(double[] values, Aggregation aggregation, DoubleMonoid monoid) {
+        super(aggregation, values.length);
+        this.values = values;
+        this.monoid = monoid;
+
+        if (aggregation == Aggregation.SUM || aggregation == Aggregation.MONOID) {
+            this.keys = null;
+            this.nodes = new double[nodesLength()];
+            for (int k = n - 1; k > 0; --k) {
+                pull(k);
+            }
+        }
+        else {
+            long[] keyValues = new long[n];
+            for (int k = 0; k < n; ++k) {
+                keyValues[k] = key(values[k]);
+            }
+            this.keys = new LongAggregationTree(keyValues, aggregation);
+            this.nodes = null;
+        }
+    }
+
+    /**
+     * @return Long ordered like the value
+     */
+    private static long key(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * @return Value of a key. Flipping the bits after the sign again undoes key
+     */
+    private static double value(long key) {
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+
+    /**
+     * @param k Id of the node
+     * @return Aggregate of node k
+     */
+    private double node(int k) {
+        return k >= n ? values[k - n] : nodes[k];
+    }
+
+    /**
+     * Recomputes node k from its children
+     */
+    private void pull(int k) {
+        if (aggregation == Aggregation.SUM) {
+            nodes[k] = node(2 * k) + node(2 * k + 1);
+        }
+        else {
+            nodes[k] = monoid.combine(node(2 * k), node(2 * k + 1));
+        }
+    }
+
+    /**
+     * @param i Left index
+     * @param j Right index
+     * @return Aggregate of the values in [i, j]. Not for ARG_MIN and ARG_MAX, see queryIndex
+     */
+    public double query(int i, int j) {
+        switch (aggregation) {
+            case MIN:
+            case MAX:
+                return value(keys.query(i, j));
+            case SUM:
+                return querySum(i, j);
+            case MONOID:
+                return queryMonoid(i, j);
+            default:
+                throw new UnsupportedOperationException(aggregation + " answers indexes, see queryIndex");
+        }
+    }
+
+    // Leaves are not stored, so the first step reads them straight from values[]
+
+    private double querySum(int i, int j) {
+        double result = 0.0;
+        int l = i + n;
+        int r = j + n + 1;
+        if ((l & 1) != 0) {
+            result = values[l++ - n];
+        }
+        if ((r & 1) != 0) {
+            result += values[--r - n];
+        }
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                result += nodes[l++];
+            }
+            if ((r & 1) != 0) {
+                result += nodes[--r];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps what is on the left and on the right of the interval apart, so the monoid need not be commutative
+     */
+    private double queryMonoid(int i, int j) {
+        double left = monoid.identity();
+        double right = monoid.identity();
+        int l = i + n;
+        int r = j + n + 1;
+        if ((l & 1) != 0) {
+            left = monoid.combine(left, values[l++ - n]);
+        }
+        if ((r & 1) != 0) {
+            right = monoid.combine(values[--r - n], right);
+        }
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                left = monoid.combine(left, nodes[l++]);
+            }
+            if ((r & 1) != 0) {
+                right = monoid.combine(nodes[--r], right);
+            }
+        }
+        return monoid.combine(left, right);
+    }
+
+    @Override
+    public int queryIndex(int i, int j) {
+        if (!aggregation.isIndex()) {
+            throw new UnsupportedOperationException(aggregation + " answers values, see query");
+        }
+        return keys.queryIndex(i, j);
+    }
+
+    /**
+     * Update the value at index i to be val
+     */
+    public void update(int i, double val) {
+        values[i] = val;
+        if (keys != null) {
+            keys.update(i, key(val));
+            return;
+        }
+
+        // rebuild tree cache going back up
+        for (int k = (i + n) >> 1; k > 0; k >>= 1) {
+            pull(k);
+        }
+    }
+
+    @Override
+    public void updateBits(int i, long bits) {
+        update(i, Double.longBitsToDouble(bits));
+    }
+
+    /**
+     * @param i Index in the array
+     * @return Value at index i
+     */
+    public double get(int i) {
+        return values[i];
+    }
+
+}
@@ -0,0 +1,342 @@
+package com.javaadvent.dec9.agg;
+
+/**
+ * Aggregation tree over a long array : range min, max, sum, argmin, argmax, or a LongMonoid
+ *
+ * nodes[k] for 1 <= k < N holds the aggregate of its children 2k and 2k + 1. Sums wrap around on overflow
+ * For ARG_MIN and ARG_MAX, nodes[2k] holds the value of node k and nodes[2k + 1] the index it is at
+ *
+ * @author florin.bunau
+ */
+public class LongAggregationTree extends AggregationTree {
+
+    /**
+     * An array of values to be queried and updated
+     */
+    public final long[] values;
+
+    /**
+     * Aggregates of the internal nodes
+     */
+    private final long[] nodes;
+
+    /**
+     * Combine operator of a MONOID tree, null otherwise
+     */
+    private final LongMonoid monoid;
+
+    /**
+     * @param values Values to be queried and updated
+     * @param aggregation What the tree computes, not MONOID
+     */
+    public LongAggregationTree(long[] values, Aggregation aggregation) {
+        this(values, builtIn(aggregation), null);
+    }
+
+    /**
+     * @param values Values to be queried and updated
+     * @param monoid Combine operator
+     */
+    public LongAggregationTree(long[] values, LongMonoid monoid) {
+        this(values, Aggregation.MONOID, monoid);
+    }
+
+    private LongAggregationTree(long[] values, Aggregation aggregation, LongMonoid monoid) {
+        super(aggregation, values.length);
+        this.values = values;
+        this.nodes = new long[nodesLength()];
+        this.monoid = monoid;
+
+        for (int k = n - 1; k > 0; --k) {
+            pull(k);
+        }
+    }
+
+    /**
+     * @param k Id of the node
+     * @return Aggregate of node k
+     */
+    private long node(int k) {
+        return k >= n ? values[k - n] : nodes[k];
+    }
+
+    /**
+     * @return Value of node k of an ARG_MIN or ARG_MAX tree
+     */
+    private long argValue(int k) {
+        return k >= n ? values[k - n] : nodes[2 * k];
+    }
+
+    /**
+     * @return Index of the value of node k of an ARG_MIN or ARG_MAX tree
+     */
+    private int arg(int k) {
+        return k >= n ? k - n : (int) nodes[2 * k + 1];
+    }
+
+    /**
+     * Recomputes node k from its children. On ties the left child wins, which keeps the leftmost index
+     */
+    private void pull(int k) {
+        switch (aggregation) {
+            case MIN:
+                nodes[k] = Math.min(node(2 * k), node(2 * k + 1));
+                break;
+            case MAX:
+                nodes[k] = Math.max(node(2 * k), node(2 * k + 1));
+                break;
+            case SUM:
+                nodes[k] = node(2 * k) + node(2 * k + 1);
+                break;
+            case ARG_MIN:
+                pullArg(k, argValue(2 * k + 1) < argValue(2 * k) ? 2 * k + 1 : 2 * k);
+                break;
+            case ARG_MAX:
+                pullArg(k, argValue(2 * k + 1) > argValue(2 * k) ? 2 * k + 1 : 2 * k);
+                break;
+            default:
+                nodes[k] = monoid.combine(node(2 * k), node(2 * k + 1));
+        }
+    }
+
+    /**
+     * Copies the value and index of child c into node k
+     */
+    private void pullArg(int k, int c) {
+        nodes[2 * k] = argValue(c);
+        nodes[2 * k + 1] = arg(c);
+    }
+
+    /**
+     * @param i Left index
+     * @param j Right index
+     * @return Aggregate of the values in [i, j]. Not for ARG_MIN and ARG_MAX, see queryIndex
+     */
+    public long query(int i, int j) {
+        switch (aggregation) {
+            case MIN:
+                return queryMin(i, j);
+            case MAX:
+                return queryMax(i, j);
+            case SUM:
+                return querySum(i, j);
+            case MONOID:
+                return queryMonoid(i, j);
+            default:
+                throw new UnsupportedOperationException(aggregation + " answers indexes, see queryIndex");
+        }
+    }
+
+    // One loop per aggregation. Leaves are not stored, so the first step reads them straight from values[]
+
+    private long queryMin(int i, int j) {
+        long result = Long.MAX_VALUE;
+        int l = i + n;
+        int r = j + n + 1;
+        if ((l & 1) != 0) {
+            result = values[l++ - n];
+        }
+        if ((r & 1) != 0) {
+            result = Math.min(result, values[--r - n]);
+        }
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                result = Math.min(result, nodes[l++]);
+            }
+            if ((r & 1) != 0) {
+                result = Math.min(result, nodes[--r]);
+            }
+        }
+        return result;
+    }
+
+    private long queryMax(int i, int j) {
+        long result = Long.MIN_VALUE;
+        int l = i + n;
+        int r = j + n + 1;
+        if ((l & 1) != 0) {
+            result = values[l++ - n];
+        }
+        if ((r & 1) != 0) {
+            result = Math.max(result, values[--r - n]);
+        }
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                result = Math.max(result, nodes[l++]);
+            }
+            if ((r & 1) != 0) {
+                result = Math.max(result, nodes[--r]);
+            }
+        }
+        return result;
+    }
+
+    private long querySum(int i, int j) {
+        long result = 0;
+        int l = i + n;
+        int r = j + n + 1;
+        if ((l & 1) != 0) {
+            result = values[l++ - n];
+        }
+        if ((r & 1) != 0) {
+            result += values[--r - n];
+        }
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                result += nodes[l++];
+            }
+            if ((r & 1) != 0) {
+                result += nodes[--r];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps what is on the left and on the right of the interval apart, so the monoid need not be commutative
+     */
+    private long queryMonoid(int i, int j) {
+        long left = monoid.identity();
+        long right = monoid.identity();
+        int l = i + n;
+        int r = j + n + 1;
+        if ((l & 1) != 0) {
+            left = monoid.combine(left, values[l++ - n]);
+        }
+        if ((r & 1) != 0) {
+            right = monoid.combine(values[--r - n], right);
+        }
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                left = monoid.combine(left, nodes[l++]);
+            }
+            if ((r & 1) != 0) {
+                right = monoid.combine(nodes[--r], right);
+            }
+        }
+        return monoid.combine(left, right);
+    }
+
+    @Override
+    public int queryIndex(int i, int j) {
+        switch (aggregation) {
+            case ARG_MIN:
+                return queryArgMin(i, j);
+            case ARG_MAX:
+                return queryArgMax(i, j);
+            default:
+                throw new UnsupportedOperationException(aggregation + " answers values, see query");
+        }
+    }
+
+    /**
+     * The left side moves right, so it only takes strictly smaller values. The right side moves left,
+     * so it takes equal values too. Between both sides, the left one wins ties.
+     * The left side starts with no index : if it takes nothing, all its values are Long.MAX_VALUE, so i is
+     * the answer unless the right side holds a smaller value.
+     * Taking a node is written as selects, which the JIT turns into conditional moves, the outcome of
+     * comparing random values can not be predicted
+     */
+    private int queryArgMin(int i, int j) {
+        long leftValue = Long.MAX_VALUE;
+        long rightValue = Long.MAX_VALUE;
+        int left = -1;
+        int right = -1;
+        int l = i + n;
+        int r = j + n + 1;
+        if ((l & 1) != 0) {
+            left = l - n;
+            leftValue = values[l++ - n];
+        }
+        if ((r & 1) != 0) {
+            right = --r - n;
+            rightValue = values[right];
+        }
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                long value = nodes[2 * l];
+                boolean take = value < leftValue;
+                left = take ? (int) nodes[2 * l + 1] : left;
+                leftValue = take ? value : leftValue;
+                ++l;
+            }
+            if ((r & 1) != 0) {
+                --r;
+                long value = nodes[2 * r];
+                boolean take = value <= rightValue;
+                right = take ? (int) nodes[2 * r + 1] : right;
+                rightValue = take ? value : rightValue;
+            }
+        }
+        if (rightValue < leftValue) {
+            return right;
+        }
+        return left < 0 ? i : left;
+    }
+
+    /**
+     * Same as queryArgMin, with the comparisons reversed
+     */
+    private int queryArgMax(int i, int j) {
+        long leftValue = Long.MIN_VALUE;
+        long rightValue = Long.MIN_VALUE;
+        int left = -1;
+        int right = -1;
+        int l = i + n;
+        int r = j + n + 1;
+        if ((l & 1) != 0) {
+            left = l - n;
+            leftValue = values[l++ - n];
+        }
+        if ((r & 1) != 0) {
+            right = --r - n;
+            rightValue = values[right];
+        }
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                long value = nodes[2 * l];
+                boolean take = value > leftValue;
+                left = take ? (int) nodes[2 * l + 1] : left;
+                leftValue = take ? value : leftValue;
+                ++l;
+            }
+            if ((r & 1) != 0) {
+                --r;
+                long value = nodes[2 * r];
+                boolean take = value >= rightValue;
+                right = take ? (int) nodes[2 * r + 1] : right;
+                rightValue = take ? value : rightValue;
+            }
+        }
+        if (rightValue > leftValue) {
+            return right;
+        }
+        return left < 0 ? i : left;
+    }
+
+    /**
+     * Update the value at index i to be val
+     */
+    public void update(int i, long val) {
+        values[i] = val;
+
+        // rebuild tree cache going back up
+        for (int k = (i + n) >> 1; k > 0; k >>= 1) {
+            pull(k);
+        }
+    }
+
+    @Override
+    public void updateBits(int i, long bits) {
+        update(i, bits);
+    }
+
+    /**
+     * @param i Index in the array
+     * @return Value at index i
+     */
+    public long get(int i) {
+        return values[i];
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.javaadvent.dec9.agg;
+
+/**
+ * Combine operator of a LongAggregationTree, for aggregations not in Aggregation
+ *
+ * combine must be associative, and identity its neutral element. It does not have to be commutative,
+ * intervals are combined left to right
+ *
+ * @author florin.bunau
+ */
+public interface LongMonoid {
+
+    /**
+     * @return Aggregate of an empty interval
+     */
+    long identity();
+
+    /**
+     * @param left Aggregate of an interval
+     * @param right Aggregate of the interval right after it
+     * @return Aggregate of both intervals
+     */
+    long combine(long left, long right);
+
+}
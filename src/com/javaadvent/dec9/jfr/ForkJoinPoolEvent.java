@@ -0,0 +1,95 @@
+package com.javaadvent.dec9.jfr;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * State of the ForkJoinPool of every registered processor, emitted every second while enabled
+ *
+ * The steal count grows with every subtask taken from another worker, a large queued task count
+ * with few active threads means the workers do not get to the work. Off by default, see dec9.jfc
+ *
+ * @author florin.bunau
+ */
+@Name("com.javaadvent.dec9.ForkJoinPoolState")
+@Label("Fork/Join Pool State")
+@Category({ "RMQ", "Fork/Join" })
+@Enabled(false)
+@Period("1 s")
+@StackTrace(false)
+public class ForkJoinPoolEvent extends Event {
+
+    /**
+     * Pools to report, by processor name
+     */
+    private static final Map<ForkJoinPool, String> pools = new ConcurrentHashMap<>();
+
+    static {
+        FlightRecorder.addPeriodicEvent(ForkJoinPoolEvent.class, new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<ForkJoinPool, String> pool : pools.entrySet()) {
+                    emit(pool.getValue(), pool.getKey());
+                }
+            }
+        });
+    }
+
+    @Label("Processor")
+    public String processor;
+
+    @Label("Parallelism")
+    public int parallelism;
+
+    @Label("Pool Size")
+    public int poolSize;
+
+    @Label("Active Threads")
+    public int activeThreads;
+
+    @Label("Running Threads")
+    public int runningThreads;
+
+    @Label("Queued Tasks")
+    public long queuedTasks;
+
+    @Label("Queued Submissions")
+    public int queuedSubmissions;
+
+    @Label("Steal Count")
+    public long stealCount;
+
+    private static void emit(String processor, ForkJoinPool pool) {
+        ForkJoinPoolEvent event = new ForkJoinPoolEvent();
+        event.processor = processor;
+        event.parallelism = pool.getParallelism();
+        event.poolSize = pool.getPoolSize();
+        event.activeThreads = pool.getActiveThreadCount();
+        event.runningThreads = pool.getRunningThreadCount();
+        event.queuedTasks = pool.getQueuedTaskCount();
+        event.queuedSubmissions = pool.getQueuedSubmissionCount();
+        event.stealCount = pool.getStealCount();
+        event.commit();
+    }
+
+    /**
+     * Reports the state of a pool until unregister
+     */
+    public static void register(String processor, ForkJoinPool pool) {
+        pools.put(pool, processor);
+    }
+
+    public static void unregister(ForkJoinPool pool) {
+        pools.remove(pool);
+    }
+}
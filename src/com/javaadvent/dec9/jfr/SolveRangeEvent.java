@@ -0,0 +1,32 @@
+package com.javaadvent.dec9.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One TaskSolver.solve of a range of a task, on any processor. Off by default, see dec9.jfc
+ *
+ * @author florin.bunau
+ */
+@Name("com.javaadvent.dec9.SolveRange")
+@Label("Solve Range")
+@Category({ "RMQ", "Solver" })
+@Enabled(false)
+@StackTrace(false)
+public class SolveRangeEvent extends Event {
+
+    @Label("Task Type")
+    public String taskType;
+
+    @Label("From")
+    @Description("Index of the first operation solved, within the task or part")
+    public int from;
+
+    @Label("Range Size")
+    public int rangeSize;
+}
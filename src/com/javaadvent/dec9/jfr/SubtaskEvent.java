@@ -0,0 +1,49 @@
+package com.javaadvent.dec9.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One compute of a fork / join Subtask, see TaskProcessorFJ and TaskProcessorFJAsync
+ *
+ * The duration covers the whole compute : for TaskProcessorFJ, a subtask that splits also waits for its two halves.
+ * Small rangeSize values mean subtasks are split too fine, many stolen ones mean the workers keep stealing
+ *
+ * Off by default, see dec9.jfc. Disabled, begin and shouldCommit are no-ops the JIT removes along with the event
+ *
+ * @author florin.bunau
+ */
+@Name("com.javaadvent.dec9.Subtask")
+@Label("Fork/Join Subtask")
+@Category({ "RMQ", "Fork/Join" })
+@Enabled(false)
+@StackTrace(false)
+public class SubtaskEvent extends Event {
+
+    @Label("Processor")
+    public String processor;
+
+    @Label("Task Type")
+    public String taskType;
+
+    @Label("Range Size")
+    @Description("Operations of the task covered by this subtask")
+    public int rangeSize;
+
+    @Label("Depth")
+    @Description("Number of splits from the whole task down to this subtask")
+    public int depth;
+
+    @Label("Split")
+    @Description("True if this subtask was split, false if it was solved")
+    public boolean split;
+
+    @Label("Stolen")
+    @Description("True if run by another thread than the one that forked it")
+    public boolean stolen;
+}
@@ -0,0 +1,94 @@
+package com.javaadvent.dec9.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log linear histogram of durations in nanos, written by a few threads and read by any
+ *
+ * Values below 16 have a bucket each. Above, every power of 2 is split in SUB_BUCKETS buckets,
+ * so a recorded value is known within 12.5%, from nanos up to days, in under 500 counters.
+ *
+ * Counts are atomic increments. TaskMetrics spreads threads over several histograms, so they are
+ * rarely contended. Readers may see a recording a bit late
+ *
+ * @author florin.bunau
+ * See : http://hdrhistogram.github.io/HdrHistogram/
+ */
+public class LatencyHistogram {
+
+    /**
+     * log2 of the number of buckets per power of 2
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this have a bucket each
+     */
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param value Duration in nanos, negative values count as 0
+     */
+    public void record(long value) {
+        int bucket = bucket(Math.max(value, 0));
+        counts.incrementAndGet(bucket);
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return Largest value falling in the bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Adds the counts of this histogram to merged
+     */
+    void addTo(long[] merged) {
+        for (int b = 0; b < BUCKETS; ++b) {
+            merged[b] += counts.get(b);
+        }
+    }
+
+    /**
+     * @param merged Counts by bucket, merged from several histograms
+     * @param percentile Between 0 and 100
+     * @return Upper bound of the percentile, 0 if there are no values
+     */
+    static long percentile(long[] merged, double percentile) {
+        long total = 0;
+        for (long count : merged) {
+            total += count;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; ++b) {
+            seen += merged[b];
+            if (seen >= rank) {
+                return highestValue(b);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,58 @@
+package com.javaadvent.dec9.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Percentiles of a merged LatencyHistogram, in micros. Shown as a composite value by JMX clients
+ *
+ * @author florin.bunau
+ */
+public class LatencySummary {
+
+    private final long count;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+
+    @ConstructorProperties({ "count", "p50Micros", "p99Micros", "maxMicros" })
+    public LatencySummary(long count, long p50Micros, long p99Micros, long maxMicros) {
+        this.count = count;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * @param merged Counts by bucket, see LatencyHistogram
+     */
+    static LatencySummary of(long[] merged) {
+        long count = 0;
+        for (long c : merged) {
+            count += c;
+        }
+        return new LatencySummary(count, LatencyHistogram.percentile(merged, 50) / 1000,
+                                  LatencyHistogram.percentile(merged, 99) / 1000,
+                                  LatencyHistogram.percentile(merged, 100) / 1000);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return count + " tasks, p50 " + p50Micros + "us, p99 " + p99Micros + "us, max " + maxMicros + "us";
+    }
+}
@@ -0,0 +1,191 @@
+package com.javaadvent.dec9.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.javaadvent.dec9.model.Task;
+
+/**
+ * Queue wait and service time histograms by TaskType, and operation counts, for one processor
+ *
+ * Threads record into one of a fixed number of Recorders, picked by thread id, so recording rarely contends
+ * with other threads. There are twice as many recorders as cores, whatever the number of threads that come
+ * and go. Readers merge all the recorders, which is slower, but only done when the metrics are looked at,
+ * through JMX or the getters.
+ *
+ * Histograms are by whole task : a task streamed in parts is recorded once its last part is done,
+ * from the time its first part was queued. See TaskResultHandler
+ *
+ * Timestamps are set on the task by TaskResultHandler : taskQueued, taskStarted and taskDone
+ *
+ * @author florin.bunau
+ */
+public class TaskMetrics implements TaskMetricsMXBean {
+
+    private static final Task.TaskType[] TASK_TYPES = Task.TaskType.values();
+
+    private final String processor;
+
+    /**
+     * Number of recorders, a power of 2
+     */
+    private static final int RECORDERS = Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+
+    /**
+     * Recorders by thread id, allocated on first use
+     */
+    private final AtomicReferenceArray<Recorder> recorders = new AtomicReferenceArray<>(RECORDERS);
+
+    private final LongAdder tasksDone = new LongAdder();
+
+    private final LongAdder operations = new LongAdder();
+
+    /**
+     * Operations and time of the previous getOperationsPerSecond call
+     */
+    private long lastOperations;
+    private long lastRateTime = System.nanoTime();
+
+    private ObjectName objectName;
+
+    /**
+     * @param processor Name of the processor, used to tell the MXBeans apart
+     */
+    public TaskMetrics(String processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * Records a whole done task. Called from the thread that finished it, or its last part
+     */
+    public void record(Task task) {
+        Recorder r = recorder();
+        int type = task.getTaskType().ordinal();
+        r.queueWait[type].record(task.getStartTime() - task.getQueuedTime());
+        r.serviceTime[type].record(task.getDoneTime() - task.getStartTime());
+        tasksDone.increment();
+    }
+
+    /**
+     * Counts the operations of a done task, or part of a task
+     */
+    public void recordOperations(int count) {
+        operations.add(count);
+    }
+
+    /**
+     * @return Recorder of the current thread
+     */
+    private Recorder recorder() {
+        int k = (int) Thread.currentThread().getId() & (RECORDERS - 1);
+        Recorder r = recorders.get(k);
+        if (r == null) {
+            recorders.compareAndSet(k, null, new Recorder());
+            r = recorders.get(k);
+        }
+        return r;
+    }
+
+    /**
+     * Registers this as an MXBean, named com.javaadvent.dec9:type=TaskMetrics,processor=<processor>
+     */
+    public synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.javaadvent.dec9:type=TaskMetrics,processor=" + ObjectName.quote(processor));
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        objectName = null;
+    }
+
+    @Override
+    public String getProcessor() {
+        return processor;
+    }
+
+    @Override
+    public long getTasksDone() {
+        return tasksDone.sum();
+    }
+
+    @Override
+    public long getOperations() {
+        return operations.sum();
+    }
+
+    @Override
+    public synchronized double getOperationsPerSecond() {
+        long now = System.nanoTime();
+        long ops = operations.sum();
+        double rate = (ops - lastOperations) * 1e9 / Math.max(1, now - lastRateTime);
+        lastOperations = ops;
+        lastRateTime = now;
+        return rate;
+    }
+
+    @Override
+    public Map<String, LatencySummary> getQueueWait() {
+        return summaries(true);
+    }
+
+    @Override
+    public Map<String, LatencySummary> getServiceTime() {
+        return summaries(false);
+    }
+
+    /**
+     * Merges the histograms of all threads, by TaskType. Types with no task done are left out
+     */
+    private Map<String, LatencySummary> summaries(boolean queueWait) {
+        Map<String, LatencySummary> summaries = new LinkedHashMap<>();
+        for (Task.TaskType taskType : TASK_TYPES) {
+            long[] merged = new long[LatencyHistogram.BUCKETS];
+            for (int k = 0; k < RECORDERS; ++k) {
+                Recorder r = recorders.get(k);
+                if (r != null) {
+                    (queueWait ? r.queueWait : r.serviceTime)[taskType.ordinal()].addTo(merged);
+                }
+            }
+            LatencySummary summary = LatencySummary.of(merged);
+            if (summary.getCount() > 0) {
+                summaries.put(taskType.name(), summary);
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Histograms of the threads sharing a recorder, by TaskType
+     */
+    private static class Recorder {
+        final LatencyHistogram[] queueWait = new LatencyHistogram[TASK_TYPES.length];
+        final LatencyHistogram[] serviceTime = new LatencyHistogram[TASK_TYPES.length];
+
+        Recorder() {
+            for (int t = 0; t < TASK_TYPES.length; ++t) {
+                queueWait[t] = new LatencyHistogram();
+                serviceTime[t] = new LatencyHistogram();
+            }
+        }
+    }
+}
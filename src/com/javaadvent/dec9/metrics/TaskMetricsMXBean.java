@@ -0,0 +1,41 @@
+package com.javaadvent.dec9.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the TaskMetrics of a processor. Latencies are keyed by TaskType name
+ *
+ * @author florin.bunau
+ */
+public interface TaskMetricsMXBean {
+
+    /**
+     * @return Name of the processor the metrics are recorded for
+     */
+    String getProcessor();
+
+    /**
+     * @return Tasks done so far. A task streamed in parts counts once, when its last part is done
+     */
+    long getTasksDone();
+
+    /**
+     * @return Operations solved so far
+     */
+    long getOperations();
+
+    /**
+     * @return Operations solved per second, since the previous call
+     */
+    double getOperationsPerSecond();
+
+    /**
+     * @return Time from a task given to the processor to its solving starting, by TaskType
+     */
+    Map<String, LatencySummary> getQueueWait();
+
+    /**
+     * @return Time from a task starting to be solved to being done, by TaskType
+     */
+    Map<String, LatencySummary> getServiceTime();
+}
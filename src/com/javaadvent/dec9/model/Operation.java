@@ -9,7 +9,9 @@ public abstract class Operation {
 
     public enum OperationType {
         Q, // Query 
-        U  // Update
+        U, // Update
+        A, // Aggregate an interval, see AggregationTree
+        S  // Set a value of an AggregationTree
     }
 
     private OperationType operationType;
@@ -23,14 +25,14 @@ public abstract class Operation {
     }
 
     /**
-     * Query an interval
+     * Query an interval. Indexes are longs, for arrays beyond 2^31 values
      */
     public static class QueryIntervalOperation extends Operation {
         
-        private int left;
-        private int right;
+        private long left;
+        private long right;
         
-        public QueryIntervalOperation(int left, int right) {
+        public QueryIntervalOperation(long left, long right) {
             super(OperationType.Q);
             this.left = left;
             this.right = right;
@@ -41,26 +43,38 @@ public abstract class Operation {
             return "" + super.operationType.name() + "[" + left + ", " + right + "]";
         }
 
+        /**
+         * @return Left index. Throws an ArithmeticException if it does not fit an int, see getLeftLong
+         */
         public int getLeft() {
-            return left;
+            return Math.toIntExact(left);
         }
 
+        /**
+         * @return Right index. Throws an ArithmeticException if it does not fit an int, see getRightLong
+         */
         public int getRight() {
+            return Math.toIntExact(right);
+        }
+
+        public long getLeftLong() {
+            return left;
+        }
+
+        public long getRightLong() {
             return right;
         }
     }
 
     /**
-     * Update at an index
-     * 
-     * TODO: Not used in this example
+     * Update at an index. The index is a long, for arrays beyond 2^31 values
      */
     public static class UpdateIntervalOperation extends Operation {
 
-        private int index;
+        private long index;
         private int val;
 
-        public UpdateIntervalOperation(int index, int val) {
+        public UpdateIntervalOperation(long index, int val) {
             super(OperationType.U);
             this.index = index;
             this.val = val;
@@ -75,10 +89,81 @@ public abstract class Operation {
             return "" + super.operationType.name() + "[@" + this.index + ", " + this.val + "]";
         }
 
+        /**
+         * @return Updated index. Throws an ArithmeticException if it does not fit an int, see getIndexLong
+         */
         public int getIndex() {
+            return Math.toIntExact(index);
+        }
+
+        public long getIndexLong() {
             return index;
         }
         
     }
-    
+
+    /**
+     * Aggregate an interval of the solver's AggregationTree : min, max, sum, argmin or argmax, as the tree was built
+     */
+    public static class AggregateIntervalOperation extends Operation {
+
+        private int left;
+        private int right;
+
+        public AggregateIntervalOperation(int left, int right) {
+            super(OperationType.A);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public String toString() {
+            return "" + super.operationType.name() + "[" + left + ", " + right + "]";
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getRight() {
+            return right;
+        }
+    }
+
+    /**
+     * Set a value of the solver's AggregationTree. The value is a long, or the raw bits of a double,
+     * depending on the type of the tree
+     */
+    public static class SetValueOperation extends Operation {
+
+        private int index;
+        private long val;
+
+        public SetValueOperation(int index, long val) {
+            super(OperationType.S);
+            this.index = index;
+            this.val = val;
+        }
+
+        @Override
+        public String toString() {
+            return "" + super.operationType.name() + "[@" + this.index + ", " + this.val + "]";
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getVal() {
+            return val;
+        }
+
+        /**
+         * @return The value as a double, for a DoubleAggregationTree
+         */
+        public double getValDouble() {
+            return Double.longBitsToDouble(val);
+        }
+    }
+
 }
@@ -0,0 +1,321 @@
+package com.javaadvent.dec9.model;
+
+/**
+ * Columnar list of operations
+ *
+ * Instead of one Operation object per operation, a batch keeps one primitive array per field:
+ *  - types  : Q, U, A or S, see QUERY, UPDATE, AGGREGATE and SET
+ *  - first  : left index of a query or an aggregate, or index of an update or a set
+ *  - second : right index of a query or an aggregate, or value of an update or a set
+ *
+ * That is 9 bytes per operation, no object headers, and the solver reads the columns directly
+ * without casts or allocation. Operation objects are only built on demand, by get(k)
+ *
+ * Indexes beyond 2^31 make the batch "wide": the high 32 bits of the index columns are kept in two more
+ * int columns, only allocated once the first such index is added. Wide batches are read with the *Long getters
+ *
+ * A set carries a 64 bit value : a long, or the raw bits of a double, depending on the tree it goes to.
+ * Values beyond an int keep their high 32 bits in the high column of second, which is then allocated on its own.
+ * That does not make the batch wide, see getValLong
+ *
+ * @author florin.bunau
+ */
+public class OperationBatch {
+
+    /**
+     * Type code of a query, matches Operation.OperationType.Q
+     */
+    public static final byte QUERY = 0;
+    /**
+     * Type code of an update, matches Operation.OperationType.U
+     */
+    public static final byte UPDATE = 1;
+    /**
+     * Type code of an aggregate, matches Operation.OperationType.A
+     */
+    public static final byte AGGREGATE = 2;
+    /**
+     * Type code of a set, matches Operation.OperationType.S
+     */
+    public static final byte SET = 3;
+
+    private final byte[] types;
+    private final int[] first;
+    private final int[] second;
+    /**
+     * High 32 bits of first and second, null until the batch is wide
+     */
+    private int[] firstHigh;
+    private int[] secondHigh;
+
+    /**
+     * Number of operations added so far
+     */
+    private int size;
+
+    /**
+     * @param capacity Maximum number of operations in this batch
+     */
+    public OperationBatch(int capacity) {
+        types = new byte[capacity];
+        first = new int[capacity];
+        second = new int[capacity];
+    }
+
+    /**
+     * Wraps filled columns, without copying them. See TaskFile
+     *
+     * @param types Type of every operation, QUERY, UPDATE, AGGREGATE or SET
+     * @param first Left indexes of queries and aggregates, indexes of updates and sets
+     * @param second Right indexes of queries and aggregates, values of updates and sets
+     * @param firstHigh High 32 bits of first, null if the batch is not wide
+     * @param secondHigh High 32 bits of second, null if the batch is not wide and every set value fits an int
+     */
+    public OperationBatch(byte[] types, int[] first, int[] second, int[] firstHigh, int[] secondHigh) {
+        this.types = types;
+        this.first = first;
+        this.second = second;
+        this.firstHigh = firstHigh;
+        this.secondHigh = secondHigh;
+        this.size = types.length;
+    }
+
+    /**
+     * Appends a query of the interval [left, right]
+     */
+    public void addQuery(int left, int right) {
+        types[size] = QUERY;
+        first[size] = left;
+        second[size] = right;
+        ++size;
+    }
+
+    /**
+     * Appends an update of index to val
+     */
+    public void addUpdate(int index, int val) {
+        types[size] = UPDATE;
+        first[size] = index;
+        second[size] = val;
+        ++size;
+    }
+
+    /**
+     * Appends an aggregate of the interval [left, right], on the solver's AggregationTree
+     */
+    public void addAggregate(int left, int right) {
+        types[size] = AGGREGATE;
+        first[size] = left;
+        second[size] = right;
+        ++size;
+    }
+
+    /**
+     * Appends a set of index to val, on the solver's LongAggregationTree
+     */
+    public void addSet(int index, long val) {
+        if (!isInt(val)) {
+            allocateSecondHigh();
+        }
+        if (secondHigh != null) {
+            secondHigh[size] = (int) (val >>> 32);
+        }
+        types[size] = SET;
+        first[size] = index;
+        second[size] = (int) val;
+        ++size;
+    }
+
+    /**
+     * Appends a set of index to val, on the solver's DoubleAggregationTree. The raw bits of val are kept
+     */
+    public void addSet(int index, double val) {
+        addSet(index, Double.doubleToRawLongBits(val));
+    }
+
+    /**
+     * Appends a query of the interval [left, right], with long indexes
+     */
+    public void addQuery(long left, long right) {
+        if (!isInt(left) || !isInt(right)) {
+            widen();
+            firstHigh[size] = (int) (left >>> 32);
+            secondHigh[size] = (int) (right >>> 32);
+        }
+        addQuery((int) left, (int) right);
+    }
+
+    /**
+     * Appends an update of index to val, with a long index
+     */
+    public void addUpdate(long index, int val) {
+        if (!isInt(index)) {
+            widen();
+            firstHigh[size] = (int) (index >>> 32);
+        }
+        addUpdate((int) index, val);
+    }
+
+    private static boolean isInt(long index) {
+        return index == (int) index;
+    }
+
+    /**
+     * Allocates the high columns. Indexes added so far are positive ints, their high bits are 0
+     */
+    private void widen() {
+        if (firstHigh == null) {
+            firstHigh = new int[types.length];
+            allocateSecondHigh();
+        }
+    }
+
+    /**
+     * Allocates the high column of second. Values of the sets added so far are ints, their high bits are their sign
+     */
+    private void allocateSecondHigh() {
+        if (secondHigh == null) {
+            secondHigh = new int[types.length];
+            for (int k = 0; k < size; ++k) {
+                if (types[k] == SET) {
+                    secondHigh[k] = second[k] >> 31;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if some index does not fit an int, and the *Long getters must be used
+     */
+    public boolean isWide() {
+        return firstHigh != null;
+    }
+
+    /**
+     * @return Number of operations in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param k Index of the operation
+     * @return QUERY, UPDATE, AGGREGATE or SET
+     */
+    public byte getType(int k) {
+        return types[k];
+    }
+
+    public boolean isQuery(int k) {
+        return types[k] == QUERY;
+    }
+
+    /**
+     * @return Left index of query or aggregate k
+     */
+    public int getLeft(int k) {
+        return first[k];
+    }
+
+    /**
+     * @return Right index of query or aggregate k
+     */
+    public int getRight(int k) {
+        return second[k];
+    }
+
+    /**
+     * @return Index updated by update or set k
+     */
+    public int getIndex(int k) {
+        return first[k];
+    }
+
+    /**
+     * @return Value set by update k
+     */
+    public int getVal(int k) {
+        return second[k];
+    }
+
+    /**
+     * @return All 64 bits of the value set by set k : a long, or the raw bits of a double
+     */
+    public long getValLong(int k) {
+        return getRightLong(k);
+    }
+
+    /**
+     * @return Left index of query k, wide or not
+     */
+    public long getLeftLong(int k) {
+        return firstHigh == null ? first[k] : ((long) firstHigh[k] << 32) | (first[k] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return Right index of query k, wide or not
+     */
+    public long getRightLong(int k) {
+        return secondHigh == null ? second[k] : ((long) secondHigh[k] << 32) | (second[k] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return Index updated by update k, wide or not
+     */
+    public long getIndexLong(int k) {
+        return getLeftLong(k);
+    }
+
+    /**
+     * @return Types of the operations, for bulk processing. Do not modify
+     */
+    public byte[] getTypes() {
+        return types;
+    }
+
+    /**
+     * @return Left indexes of queries and aggregates (indexes of updates and sets), for bulk processing. Do not modify
+     */
+    public int[] getLefts() {
+        return first;
+    }
+
+    /**
+     * @return Right indexes of queries and aggregates (values of updates and sets), for bulk processing. Do not modify
+     */
+    public int[] getRights() {
+        return second;
+    }
+
+    /**
+     * @return High 32 bits of the left indexes, null if the batch is not wide. Do not modify
+     */
+    public int[] getLeftsHigh() {
+        return firstHigh;
+    }
+
+    /**
+     * @return High 32 bits of the right indexes and set values, null if none needs them. Do not modify
+     */
+    public int[] getRightsHigh() {
+        return secondHigh;
+    }
+
+    /**
+     * @param k Index of the operation
+     * @return Operation k as an object. Allocates, not meant for the hot path
+     */
+    public Operation get(int k) {
+        switch (types[k]) {
+            case QUERY:
+                return new Operation.QueryIntervalOperation(getLeftLong(k), getRightLong(k));
+            case AGGREGATE:
+                return new Operation.AggregateIntervalOperation(first[k], second[k]);
+            case SET:
+                return new Operation.SetValueOperation(first[k], getValLong(k));
+            default:
+                return new Operation.UpdateIntervalOperation(getIndexLong(k), second[k]);
+        }
+    }
+
+}
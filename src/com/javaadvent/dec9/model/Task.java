@@ -1,6 +1,11 @@
 package com.javaadvent.dec9.model;
 
-import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.javaadvent.dec9.rmq.RMQEngine;
+import com.javaadvent.dec9.rmq.RMQSnapshotEngine;
 
 /**
  * Models a task composed of multiple operations
@@ -8,31 +13,109 @@ import java.util.List;
  * 
  * The task size is how many queries does the task contain. This could be in a real world example a 
  * bulk query list coming from some client
+ * 
+ * A large task can also arrive as parts, each holding a chunk of its operations, so it can be solved
+ * before all its operations exist. The parts point to a parent task that holds no operations, 
+ * and the parent is done once all its parts are done. See StreamingTaskProducer
  *  
  * @author florin.bunau
  */
 public class Task {
     
     /**
-     * Operations to be done in this task
+     * Operations to be done in this task, stored column wise
      */
-    private final List<Operation> operations;
+    private final OperationBatch operations;
     /**
      * Type of task. How large it is.
      */
     private final TaskType taskType;
+    /**
+     * Version of the array this task reads, if the engine supports snapshots. 
+     * Pinned by the first solver to touch the task, so all its parts read the same version.
+     * Set with a CAS, so pinning is a volatile read once the snapshot is there
+     */
+    private volatile RMQEngine snapshot;
+
+    private static final AtomicReferenceFieldUpdater<Task, RMQEngine> SNAPSHOT =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, RMQEngine.class, "snapshot");
+    /**
+     * Task this is a part of, null for a whole task
+     */
+    private final Task parent;
+    /**
+     * Index of the first operation of this part within the parent task
+     */
+    private final int offset;
+    /**
+     * Parts of this task not done yet. Null unless this is a parent task
+     */
+    private final AtomicInteger pendingParts;
+    /**
+     * System.nanoTime when the task was given to a processor, started being solved and was done.
+     * Set by TaskResultHandler, the processor hands the task over between threads after setting each one.
+     * The queued and start times of a parent are stamped by whichever of its parts gets there first, see stampQueuedTime
+     */
+    private volatile long queuedTime;
+    private volatile long startTime;
+    private long doneTime;
+    /**
+     * System.nanoTime when the task started being solved, for the adaptive processor's own timing. 
+     * Kept apart from startTime, which belongs to TaskMetrics, see TimingResultHandler
+     */
+    private long timingStartTime;
+
+    private static final AtomicLongFieldUpdater<Task> QUEUED_TIME =
+            AtomicLongFieldUpdater.newUpdater(Task.class, "queuedTime");
+    private static final AtomicLongFieldUpdater<Task> START_TIME =
+            AtomicLongFieldUpdater.newUpdater(Task.class, "startTime");
     
-    public Task(List<Operation> operations, TaskType taskType) {
+    public Task(OperationBatch operations, TaskType taskType) {
         this.operations = operations;
         this.taskType = taskType;
+        this.parent = null;
+        this.offset = 0;
+        this.pendingParts = null;
+    }
+    
+    /**
+     * Builds a parent task, which will receive its operations as parts
+     * 
+     * @param taskType Type of task
+     * @param parts Number of parts the operations will come in
+     */
+    public Task(TaskType taskType, int parts) {
+        this.operations = new OperationBatch(0);
+        this.taskType = taskType;
+        this.parent = null;
+        this.offset = 0;
+        this.pendingParts = new AtomicInteger(parts);
+    }
+    
+    /**
+     * Builds a part of a parent task
+     * 
+     * @param operations Operations of this part
+     * @param parent Parent task
+     * @param offset Index of the first operation of this part within the parent task
+     */
+    public Task(OperationBatch operations, Task parent, int offset) {
+        this.operations = operations;
+        this.taskType = parent.taskType;
+        this.parent = parent;
+        this.offset = offset;
+        this.pendingParts = null;
     }
     
     @Override
     public String toString() {
+        if (parent != null) {
+            return taskType.name() + " (" + offset + " + " + operations.size() + ")";
+        }
         return taskType.name() + " (" + operations.size() + ")";
     }
     
-    public List<Operation> getOperations() {
+    public OperationBatch getOperations() {
         return operations;
     }
 
@@ -40,6 +123,104 @@ public class Task {
         return taskType;
     }
 
+    public long getQueuedTime() {
+        return queuedTime;
+    }
+
+    public void setQueuedTime(long queuedTime) {
+        this.queuedTime = queuedTime;
+    }
+
+    /**
+     * Sets the queued time, unless it is already set. Parts queued at once from different threads race on 
+     * their parent, the first stamp wins
+     * 
+     * @return True if this call set the time
+     */
+    public boolean stampQueuedTime(long queuedTime) {
+        return QUEUED_TIME.compareAndSet(this, 0, queuedTime);
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Sets the start time, unless it is already set, see stampQueuedTime
+     * 
+     * @return True if this call set the time
+     */
+    public boolean stampStartTime(long startTime) {
+        return START_TIME.compareAndSet(this, 0, startTime);
+    }
+
+    public long getDoneTime() {
+        return doneTime;
+    }
+
+    public void setDoneTime(long doneTime) {
+        this.doneTime = doneTime;
+    }
+
+    public long getTimingStartTime() {
+        return timingStartTime;
+    }
+
+    public void setTimingStartTime(long timingStartTime) {
+        this.timingStartTime = timingStartTime;
+    }
+
+    /**
+     * @return The whole task: the parent of a part, or this task
+     */
+    public Task getRoot() {
+        return parent != null ? parent : this;
+    }
+
+    /**
+     * @return Index of the first operation of this part within the whole task, 0 for a whole task
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Marks this task, or part, as done
+     * 
+     * @return True if the whole task is done now
+     */
+    public boolean markDone() {
+        if (parent == null) {
+            return true;
+        }
+        return parent.pendingParts.decrementAndGet() == 0;
+    }
+
+    /**
+     * @param source Engine to take a snapshot from, if this task has none yet
+     * @return The snapshot this task reads from
+     */
+    public RMQEngine pinSnapshot(RMQSnapshotEngine source) {
+        RMQEngine pinned = snapshot;
+        if (pinned != null) {
+            return pinned;
+        }
+        // Solvers racing to pin all take a snapshot, the first one set wins
+        RMQEngine taken = source.snapshot();
+        return SNAPSHOT.compareAndSet(this, null, taken) ? taken : snapshot;
+    }
+
+    /**
+     * Drops the pinned snapshot, so the version can be reclaimed once no other task uses it
+     */
+    public void releaseSnapshot() {
+        snapshot = null;
+    }
+
     /**
      * Possible task sizes
      */
@@ -24,6 +24,7 @@ public abstract class AbstractTaskProcessor {
 
     /**
      * Process a task
+     * Implementations tell the TaskResultHandler when the task is queued, started and done
      * @param task Task to be processed
      */
     public abstract void process(Task task);
@@ -0,0 +1,59 @@
+package com.javaadvent.dec9.processor;
+
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Decides if a fork / join subtask is split further, or solved right away
+ *
+ * - Subtasks larger than task size / (parallelism * LEAVES_PER_WORKER) are always split,
+ *   so a large task gives every worker several pieces to steal, whatever the core count
+ * - Below that, a subtask is only split while its worker has few queued subtasks left,
+ *   meaning other workers are running out of work to steal
+ * - Subtasks of MIN_GRAIN operations or less are never split, the fork would cost more than the solving
+ *
+ * @author florin.bunau
+ * See : http://gee.cs.oswego.edu/dl/papers/fj.pdf
+ */
+class SplitPolicy {
+
+    /**
+     * Smallest subtask worth splitting, in operations
+     */
+    static final int MIN_GRAIN = 512;
+
+    /**
+     * Pieces every worker should get out of one task
+     */
+    static final int LEAVES_PER_WORKER = 8;
+
+    /**
+     * Split further while the current worker has at most this many surplus subtasks queued
+     */
+    static final int SURPLUS_THRESHOLD = 2;
+
+    /**
+     * Number of workers of the pool
+     */
+    private final int parallelism;
+
+    SplitPolicy(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Must be called from the compute method of a fork / join task
+     *
+     * @param taskSize Number of operations of the whole task
+     * @param subtaskSize Number of operations of the subtask
+     * @return True if the subtask should be split in two
+     */
+    boolean shouldSplit(int taskSize, int subtaskSize) {
+        if (subtaskSize <= MIN_GRAIN) {
+            return false;
+        }
+        if (subtaskSize > taskSize / (parallelism * LEAVES_PER_WORKER)) {
+            return true;
+        }
+        return ForkJoinTask.getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD;
+    }
+}
@@ -0,0 +1,175 @@
+package com.javaadvent.dec9.processor;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.javaadvent.dec9.model.Task;
+import com.javaadvent.dec9.solver.TaskSolver;
+
+/**
+ * This is a hybrid processor, picking for every task how it is solved, from how it went for the previous tasks of its type
+ *
+ * Strategies, each one an existing processor :
+ *  - INLINE    : TaskProcessorSimple, on the calling thread. No hand over, but the caller waits
+ *  - POOL      : TaskProcessorPool, several tasks are solved at once
+ *  - FORK_JOIN : TaskProcessorFJAsync, a task is split and solved by several workers
+ *
+ * For every TaskType and strategy, the processor keeps an exponentially weighted moving average of the
+ * service time, from started to done, measured by a TimingResultHandler. The queue wait is left out: it depends on
+ * the tasks sent before, to any strategy, more than on the strategy itself. A task goes to the strategy with the
+ * lowest average.
+ * Every EXPLORE_EVERY tasks of a type, a task tries the next strategy instead, so the averages follow the
+ * traffic as it changes, and a strategy that got unlucky once gets another chance.
+ *
+ * Only tasks up to INLINE_MAX_OPERATIONS run inline : the caller stops producing while it solves,
+ * which delays every other task, and that cost does not show in the task's own time.
+ *
+ * POOL runs its tasks on the workers of the FORK_JOIN pool, whole, so the processor never runs more than
+ * parallelism threads whatever the mix of strategies
+ *
+ * @author florin.bunau
+ * See : https://en.wikipedia.org/wiki/Moving_average#Exponential_moving_average
+ */
+public class TaskProcessorAdaptive extends AbstractTaskProcessor {
+
+    /**
+     * Ways to solve a task
+     */
+    public static enum Strategy {
+        INLINE, POOL, FORK_JOIN
+    }
+
+    private static final Strategy[] STRATEGIES = Strategy.values();
+
+    private static final Task.TaskType[] TASK_TYPES = Task.TaskType.values();
+
+    /**
+     * Largest task solved inline
+     */
+    public static final int INLINE_MAX_OPERATIONS = Task.TaskType.S.getRange();
+
+    /**
+     * Weight of the last measure in the moving average
+     */
+    public static final double EWMA_WEIGHT = 0.2;
+
+    /**
+     * One in this many tasks of a type tries another strategy than the best one
+     */
+    public static final int EXPLORE_EVERY = 16;
+
+    /**
+     * Not measured yet
+     */
+    private static final long UNKNOWN = Double.doubleToRawLongBits(Double.NaN);
+
+    /**
+     * Processor of each strategy, by Strategy ordinal
+     */
+    private final AbstractTaskProcessor[] delegates = new AbstractTaskProcessor[STRATEGIES.length];
+
+    /**
+     * Average nanos from started to done, by TaskType then Strategy. Doubles, as raw long bits
+     */
+    private final AtomicLongArray averages = new AtomicLongArray(TASK_TYPES.length * STRATEGIES.length);
+
+    /**
+     * Tasks seen, by TaskType
+     */
+    private final AtomicIntegerArray seen = new AtomicIntegerArray(TASK_TYPES.length);
+
+    public TaskProcessorAdaptive(TaskSolver taskSolver) {
+        this(taskSolver, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism Number of workers of the fork / join pool, shared by POOL and FORK_JOIN
+     */
+    public TaskProcessorAdaptive(TaskSolver taskSolver, int parallelism) {
+        super(taskSolver);
+        for (int k = 0; k < averages.length(); ++k) {
+            averages.set(k, UNKNOWN);
+        }
+        delegates[Strategy.INLINE.ordinal()] = new TaskProcessorSimple(timed(Strategy.INLINE));
+        TaskProcessorFJAsync forkJoin = new TaskProcessorFJAsync(timed(Strategy.FORK_JOIN), parallelism);
+        delegates[Strategy.POOL.ordinal()] = new TaskProcessorPool(timed(Strategy.POOL), forkJoin.getForkJoinPool());
+        delegates[Strategy.FORK_JOIN.ordinal()] = forkJoin;
+    }
+
+    /**
+     * @return Solver reporting to the result handler of this processor, and timing the tasks of a strategy
+     */
+    private TaskSolver timed(final Strategy strategy) {
+        return taskSolver.withResultHandler(new TimingResultHandler(taskSolver.getTaskResultHandler()) {
+            @Override
+            void taskTimed(Task task, long nanos) {
+                record(task.getTaskType(), strategy, nanos);
+            }
+        });
+    }
+
+    @Override
+    public void process(Task task) {
+        delegates[choose(task).ordinal()].process(task);
+    }
+
+    /**
+     * @return Strategy with the lowest average for the type of the task, or the next one to explore
+     */
+    private Strategy choose(Task task) {
+        Task.TaskType taskType = task.getTaskType();
+        boolean inline = task.getOperations().size() <= INLINE_MAX_OPERATIONS;
+        int first = inline ? 0 : Strategy.INLINE.ordinal() + 1;
+        int count = seen.getAndIncrement(taskType.ordinal());
+
+        if (count % EXPLORE_EVERY == EXPLORE_EVERY - 1) {
+            int explored = count / EXPLORE_EVERY % (STRATEGIES.length - first);
+            return STRATEGIES[first + explored];
+        }
+
+        Strategy best = null;
+        double bestAverage = Double.MAX_VALUE;
+        for (int s = first; s < STRATEGIES.length; ++s) {
+            double average = getAverage(taskType, STRATEGIES[s]);
+            if (Double.isNaN(average)) {
+                // Until all are measured, take turns
+                return STRATEGIES[first + count % (STRATEGIES.length - first)];
+            }
+            if (average < bestAverage) {
+                bestAverage = average;
+                best = STRATEGIES[s];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds a measure to the average, without locking
+     */
+    private void record(Task.TaskType taskType, Strategy strategy, long nanos) {
+        int k = taskType.ordinal() * STRATEGIES.length + strategy.ordinal();
+        while (true) {
+            long bits = averages.get(k);
+            double average = Double.longBitsToDouble(bits);
+            double updated = Double.isNaN(average) ? nanos : average + EWMA_WEIGHT * (nanos - average);
+            if (averages.compareAndSet(k, bits, Double.doubleToRawLongBits(updated))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Average nanos from started to done of the tasks of a type solved with a strategy, NaN if none was
+     */
+    public double getAverage(Task.TaskType taskType, Strategy strategy) {
+        return Double.longBitsToDouble(averages.get(taskType.ordinal() * STRATEGIES.length + strategy.ordinal()));
+    }
+
+    @Override
+    public void shutdown() {
+        for (AbstractTaskProcessor delegate : delegates) {
+            delegate.shutdown();
+        }
+    }
+
+}
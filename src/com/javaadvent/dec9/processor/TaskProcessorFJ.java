@@ -3,14 +3,16 @@ package com.javaadvent.dec9.processor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 
+import com.javaadvent.dec9.jfr.ForkJoinPoolEvent;
+import com.javaadvent.dec9.jfr.SubtaskEvent;
 import com.javaadvent.dec9.model.*;
 import com.javaadvent.dec9.solver.TaskSolver;
 
 /**
  * This is a Fork / Join processor for tasks, using a ForkJoinPool
  * 
- * At the processing step it will split the task into subtasks until it reaches a threshold
- * Once the threshold is reached it will solve the subtask
+ * At the processing step it will split the task into subtasks until the SplitPolicy says to stop
+ * Then it will solve the subtask
  * 
  * @author florin.bunau
  */
@@ -21,22 +23,43 @@ public class TaskProcessorFJ extends AbstractTaskProcessor {
      */
     private ForkJoinPool forkJoinPool;
     
+    /**
+     * When to stop splitting subtasks
+     */
+    private SplitPolicy splitPolicy;
+    
     public TaskProcessorFJ(TaskSolver taskSolver) {
+        this(taskSolver, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * @param parallelism Number of workers of the pool
+     */
+    public TaskProcessorFJ(TaskSolver taskSolver, int parallelism) {
         super(taskSolver);
-        forkJoinPool = new ForkJoinPool();
+        forkJoinPool = new ForkJoinPool(parallelism);
+        splitPolicy = new SplitPolicy(forkJoinPool.getParallelism());
+        ForkJoinPoolEvent.register(getClass().getSimpleName(), forkJoinPool);
     }
 
     @Override
     public void process(Task task) {
         // Give the pool a subtask to solve. At the beginning task == subtask 
-        forkJoinPool.invoke(new Subtask(task, 0, task.getOperations().size(), true));
+        taskSolver.getTaskResultHandler().taskQueued(task);
+        forkJoinPool.invoke(new Subtask(task, 0, task.getOperations().size(), 0));
+    }
+
+    @Override
+    public void shutdown() {
+        ForkJoinPoolEvent.unregister(forkJoinPool);
+        forkJoinPool.shutdown();
     }
 
     /**
      * Wraps a task to be solved, and restricts it's extend to a subtask.
      * 
      * Also implements a FJ recursive action, that will split the subtask into two smaller substasks
-     * if it's above a specified threshold
+     * if the split policy says so
      */
     private class Subtask extends RecursiveAction  {
 
@@ -60,25 +83,52 @@ public class TaskProcessorFJ extends AbstractTaskProcessor {
          * Is this subtask == the initial task
          */
         final boolean rootTask;
+        
+        /**
+         * Number of splits from the initial task down to this subtask
+         */
+        final int depth;
+        
+        /**
+         * Thread that created this subtask, to tell if it was stolen
+         */
+        final Thread forkedBy = Thread.currentThread();
 
-        public Subtask(Task task, int from, int to, boolean rootTask) {
+        public Subtask(Task task, int from, int to, int depth) {
             this.task = task;
             this.from = from;
             this.to = to;
-            this.rootTask = rootTask;
+            this.depth = depth;
+            this.rootTask = depth == 0;
         }
 
         @Override
         protected void compute() {
-            // If the subtask size is smaller than an L task. ( XS, S, M ), then go ahead and solve it
-            if (to - from < Task.TaskType.L.getRange()) {
+            SubtaskEvent event = new SubtaskEvent();
+            event.begin();
+            boolean split = false;
+            if (rootTask) {
+                taskSolver.getTaskResultHandler().taskStarted(task);
+            }
+            // If the subtask is small, or other workers have enough to steal, then go ahead and solve it
+            if (!splitPolicy.shouldSplit(task.getOperations().size(), to - from)) {
                 taskSolver.solve(task, from, to);
             }
-            // If it's same or larger ( L, XL, XXL ), we will break it into two smaller substasks and solve it later
+            // Otherwise, we will break it into two smaller substasks and solve it later. 'to' is exclusive
             else {
+                split = true;
                 int mid = (from + to) / 2;
-                invokeAll(new Subtask(this.task, from, mid, false), 
-                          new Subtask(this.task, mid + 1, to, false));
+                invokeAll(new Subtask(this.task, from, mid, depth + 1), 
+                          new Subtask(this.task, mid, to, depth + 1));
+            }
+            if (event.shouldCommit()) {
+                event.processor = "TaskProcessorFJ";
+                event.taskType = task.getTaskType().name();
+                event.rangeSize = to - from;
+                event.depth = depth;
+                event.split = split;
+                event.stolen = !rootTask && forkedBy != Thread.currentThread();
+                event.commit();
             }
             // We're done solving the subtask, if it's the initial task, then signal that we are done solving the task
             if (rootTask) {
@@ -0,0 +1,179 @@
+package com.javaadvent.dec9.processor;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+import com.javaadvent.dec9.jfr.ForkJoinPoolEvent;
+import com.javaadvent.dec9.jfr.SubtaskEvent;
+import com.javaadvent.dec9.model.Task;
+import com.javaadvent.dec9.solver.TaskSolver;
+
+/**
+ * This is a non blocking Fork / Join processor for tasks, using a ForkJoinPool and CountedCompleters
+ *
+ * Unlike TaskProcessorFJ, process does not wait for the task to be solved. The producer keeps producing
+ * while the pool solves, and many tasks are in the pool at once, so workers stay busy across task boundaries.
+ *
+ * Subtasks never join: each one forks its right halves, solves what is left, and counts itself down.
+ * When the last piece of a task is done, the root completer signals the task done.
+ *
+ * At most MAX_TASKS_IN_FLIGHT_PER_WORKER * parallelism tasks are in the pool. When that many are in flight,
+ * process blocks until one completes, so a fast producer can not flood the pool
+ *
+ * @author florin.bunau
+ * See : http://docs.oracle.com/javase/8/docs/api/java/util/concurrent/CountedCompleter.html
+ */
+public class TaskProcessorFJAsync extends AbstractTaskProcessor {
+
+    /**
+     * Tasks allowed in the pool at once, per worker
+     */
+    public static final int MAX_TASKS_IN_FLIGHT_PER_WORKER = 4;
+
+    /**
+     * Work stealing thread pool implementation
+     */
+    private ForkJoinPool forkJoinPool;
+
+    /**
+     * When to stop splitting subtasks
+     */
+    private SplitPolicy splitPolicy;
+
+    /**
+     * One permit per task that can still enter the pool
+     */
+    private Semaphore inFlight;
+
+    public TaskProcessorFJAsync(TaskSolver taskSolver) {
+        this(taskSolver, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism Number of workers of the pool
+     */
+    public TaskProcessorFJAsync(TaskSolver taskSolver, int parallelism) {
+        super(taskSolver);
+        forkJoinPool = new ForkJoinPool(parallelism);
+        splitPolicy = new SplitPolicy(forkJoinPool.getParallelism());
+        inFlight = new Semaphore(MAX_TASKS_IN_FLIGHT_PER_WORKER * forkJoinPool.getParallelism());
+        ForkJoinPoolEvent.register(getClass().getSimpleName(), forkJoinPool);
+    }
+
+    @Override
+    public void process(Task task) {
+        // Backpressure: wait for room in the pool, then hand the task over without waiting for it
+        // Time waiting for room counts as queue wait
+        taskSolver.getTaskResultHandler().taskQueued(task);
+        inFlight.acquireUninterruptibly();
+        forkJoinPool.execute(new Subtask(null, task, 0, task.getOperations().size(), 0));
+    }
+
+    /**
+     * @return Pool the tasks are solved in, so other processors can share its workers
+     */
+    ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    @Override
+    public void shutdown() {
+        ForkJoinPoolEvent.unregister(forkJoinPool);
+        forkJoinPool.shutdown();
+    }
+
+    /**
+     * Solves the operations [from, to) of a task. The root subtask, without completer, covers the whole task
+     */
+    private class Subtask extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Task to be solved
+         */
+        final Task task;
+
+        /**
+         * Limit the task from operation having index 'from'
+         */
+        final int from;
+        /**
+         * to operation having index 'to'
+         */
+        final int to;
+
+        /**
+         * Number of splits from the whole task down to this subtask
+         */
+        final int depth;
+
+        /**
+         * Thread that created this subtask, to tell if it was stolen
+         */
+        final Thread forkedBy = Thread.currentThread();
+
+        Subtask(CountedCompleter<?> completer, Task task, int from, int to, int depth) {
+            super(completer);
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        public void compute() {
+            SubtaskEvent event = new SubtaskEvent();
+            event.begin();
+            if (getCompleter() == null) {
+                taskSolver.getTaskResultHandler().taskStarted(task);
+            }
+            int size = task.getOperations().size();
+            int end = to;
+            int splits = 0;
+
+            // Fork right halves while the policy says to split, keep the left half
+            while (splitPolicy.shouldSplit(size, end - from)) {
+                int mid = (from + end) >>> 1;
+                addToPendingCount(1);
+                new Subtask(this, task, mid, end, depth + ++splits).fork();
+                end = mid;
+            }
+            taskSolver.solve(task, from, end);
+
+            if (event.shouldCommit()) {
+                event.processor = "TaskProcessorFJAsync";
+                event.taskType = task.getTaskType().name();
+                event.rangeSize = to - from;
+                event.depth = depth;
+                event.split = splits > 0;
+                event.stolen = getCompleter() != null && forkedBy != Thread.currentThread();
+                event.commit();
+            }
+
+            // Completes this subtask once all its forks completed, and so on up to the root
+            tryComplete();
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            if (getCompleter() == null) {
+                taskSolver.getTaskResultHandler().taskDone(task);
+                inFlight.release();
+            }
+        }
+
+        @Override
+        public boolean onExceptionalCompletion(Throwable ex, CountedCompleter<?> caller) {
+            if (getCompleter() == null) {
+                ex.printStackTrace();
+                // Counted down anyway, nobody waits on this subtask and the runner waits for every task
+                taskSolver.getTaskResultHandler().taskDone(task);
+                inFlight.release();
+            }
+            return true;
+        }
+    }
+
+}
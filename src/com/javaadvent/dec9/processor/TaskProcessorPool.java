@@ -10,8 +10,9 @@ import com.javaadvent.dec9.solver.TaskSolver;
  * This is a thread pool processor for tasks, using a fixed thread pool ExecutorService
  * 
  * We spawn a pool of threads, and as soon as we have a job we submit it to the executor to process it
- * This should run 4 threads solving tasks in parallel. This is not as efficient as a workstealing thread pool, 
+ * This should run POOL_SIZE threads solving tasks in parallel, unless told otherwise. This is not as efficient as a workstealing thread pool, 
  * because we might have one thread busy with a large task, while the others have nothing to do
+ * Small tasks also wait behind the large ones queued before them, see TaskProcessorSizeAware
  * 
  * @author florin.bunau
  */
@@ -20,7 +21,7 @@ public class TaskProcessorPool extends AbstractTaskProcessor  {
     /**
      * 4 threads for a 4 core / 4 threads system
      */
-    public final int POOL_SIZE = 4;
+    public static final int POOL_SIZE = 4;
     
     /**
      * Thread pool
@@ -28,13 +29,28 @@ public class TaskProcessorPool extends AbstractTaskProcessor  {
     private ExecutorService threadPool;
     
     public TaskProcessorPool(TaskSolver taskSolver) {
+        this(taskSolver, POOL_SIZE);
+    }
+    
+    /**
+     * @param parallelism Number of threads of the pool
+     */
+    public TaskProcessorPool(TaskSolver taskSolver, int parallelism) {
+        this(taskSolver, Executors.newFixedThreadPool(parallelism));
+    }
+
+    /**
+     * @param threadPool Executor the tasks are solved on, possibly shared with other processors. Shut down by shutdown
+     */
+    TaskProcessorPool(TaskSolver taskSolver, ExecutorService threadPool) {
         super(taskSolver);
-        threadPool = Executors.newFixedThreadPool(POOL_SIZE);
+        this.threadPool = threadPool;
     }
 
     @Override
     public void process(Task task) {
         // As soon as we have a task we submit it to the threadpool
+        taskSolver.getTaskResultHandler().taskQueued(task);
         threadPool.submit(new TaskRunnable(task));
     }
     
@@ -59,6 +75,7 @@ public class TaskProcessorPool extends AbstractTaskProcessor  {
         
         @Override
         public void run() {
+            taskSolver.getTaskResultHandler().taskStarted(task);
             taskSolver.solve(task);
             taskSolver.getTaskResultHandler().taskDone(task);
         }
@@ -17,6 +17,8 @@ public class TaskProcessorSimple extends AbstractTaskProcessor {
 
     @Override
     public void process(Task task) {
+        taskSolver.getTaskResultHandler().taskQueued(task);
+        taskSolver.getTaskResultHandler().taskStarted(task);
         taskSolver.solve(task);
         taskSolver.getTaskResultHandler().taskDone(task);
     }
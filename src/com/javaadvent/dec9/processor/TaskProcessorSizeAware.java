@@ -0,0 +1,147 @@
+package com.javaadvent.dec9.processor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.javaadvent.dec9.model.Task;
+import com.javaadvent.dec9.producer.StreamingTaskProducer;
+import com.javaadvent.dec9.solver.TaskSolver;
+
+/**
+ * This is a thread pool processor for tasks, like TaskProcessorPool, but small tasks do not wait behind large ones
+ *
+ * Tasks are cut in slices of at most SLICE_SIZE operations, and the pool runs the slice with the earliest
+ * virtual deadline first. Slice k of a task is due at
+ *     arrival + NANOS_ALLOWED_PER_OPERATION * (operations of the task up to the end of slice k)
+ * so
+ *  - a small task is due soon after it arrives, and gets ahead of the slices of large tasks already queued
+ *  - a large task is not starved : its next slice ages, and once it is the earliest one due it runs
+ *  - slices of large tasks that arrived together interleave, and several threads can solve one large task
+ *
+ * Shortest job first would have the same effect on small tasks, but could starve large tasks forever.
+ * The size used is the number of operations of the task given to process, so parts of a streamed task are
+ * scheduled as tasks of their own. The task is done when its last slice is done.
+ *
+ * @author florin.bunau
+ * See : https://en.wikipedia.org/wiki/Earliest_eligible_virtual_deadline_first_scheduling
+ */
+public class TaskProcessorSizeAware extends AbstractTaskProcessor {
+
+    /**
+     * Most operations in a slice. A fraction of the parts of StreamingTaskProducer, so streamed parts
+     * are sliced too, and a small task waits behind a few thousand operations at most
+     */
+    public static final int SLICE_SIZE = StreamingTaskProducer.CHUNK_SIZE / 8;
+
+    /**
+     * Time a task may wait, per operation, before it goes ahead of the tasks that arrived after it.
+     * A few times the cost of solving an operation
+     */
+    public static final long NANOS_ALLOWED_PER_OPERATION = 1000;
+
+    /**
+     * Threads solving slices
+     */
+    private ExecutorService threadPool;
+
+    /**
+     * Breaks ties between slices due at the same time, in arrival order
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    public TaskProcessorSizeAware(TaskSolver taskSolver) {
+        this(taskSolver, TaskProcessorPool.POOL_SIZE);
+    }
+
+    /**
+     * @param parallelism Number of threads of the pool
+     */
+    public TaskProcessorSizeAware(TaskSolver taskSolver, int parallelism) {
+        super(taskSolver);
+        // Runnables must be passed to execute, submit would wrap them in a FutureTask the queue can not order
+        threadPool = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                                            new PriorityBlockingQueue<Runnable>());
+    }
+
+    @Override
+    public void process(Task task) {
+        taskSolver.getTaskResultHandler().taskQueued(task);
+        long arrival = System.nanoTime();
+        int size = task.getOperations().size();
+        int slices = Math.max(1, (size + SLICE_SIZE - 1) / SLICE_SIZE);
+        SlicedTask slicedTask = new SlicedTask(task, slices);
+
+        for (int k = 0; k < slices; ++k) {
+            int from = k * SLICE_SIZE;
+            int to = Math.min(from + SLICE_SIZE, size);
+            long deadline = arrival + NANOS_ALLOWED_PER_OPERATION * Math.max(to, 1);
+            threadPool.execute(new Slice(slicedTask, from, to, deadline, sequence.getAndIncrement()));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        threadPool.shutdown();
+    }
+
+    /**
+     * A task, and how many of its slices are started and done
+     */
+    private static class SlicedTask {
+        final Task task;
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger remaining;
+
+        SlicedTask(Task task, int slices) {
+            this.task = task;
+            this.remaining = new AtomicInteger(slices);
+        }
+    }
+
+    /**
+     * Solves the operations [from, to) of a task. Ordered by deadline, then arrival
+     */
+    private class Slice implements Runnable, Comparable<Slice> {
+
+        final SlicedTask slicedTask;
+        final int from;
+        final int to;
+        final long deadline;
+        final long sequence;
+
+        Slice(SlicedTask slicedTask, int from, int to, long deadline, long sequence) {
+            this.slicedTask = slicedTask;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            Task task = slicedTask.task;
+            if (slicedTask.started.getAndIncrement() == 0) {
+                taskSolver.getTaskResultHandler().taskStarted(task);
+            }
+            taskSolver.solve(task, from, to);
+            if (slicedTask.remaining.decrementAndGet() == 0) {
+                taskSolver.getTaskResultHandler().taskDone(task);
+            }
+        }
+
+        @Override
+        public int compareTo(Slice other) {
+            // nanoTime values are compared by difference, they can overflow
+            long diff = deadline - other.deadline;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.javaadvent.dec9.processor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.javaadvent.dec9.model.Task;
+import com.javaadvent.dec9.producer.StreamingTaskProducer;
+import com.javaadvent.dec9.solver.TaskSolver;
+
+/**
+ * This is a thread per task processor, running every task on its own virtual thread
+ *
+ * A task larger than CHUNK_SIZE fans out: the task thread starts one child thread per chunk but the first,
+ * solves the first chunk, then joins all its children before the task is done. If one chunk fails, the children
+ * not started yet skip theirs, and the task thread still waits for the running ones, like a StructuredTaskScope
+ * that shuts down on failure. Nothing of a task runs once it is reported done, failed or not.
+ *
+ * Virtual threads are cheap to block, so result delivery can block on sockets or files while
+ * the carrier threads, as many as the cores, keep solving other tasks. No pool to size.
+ *
+ * Virtual threads need JDK 21. They are looked up by reflection, and on an older JDK every task
+ * gets a platform thread from a cached pool instead, and the children share a fixed pool of one thread per core.
+ * Platform threads are not cheap, so fewer tasks are let in flight then, see MAX_TASKS_IN_FLIGHT_PER_CORE
+ *
+ * @author florin.bunau
+ * See : https://openjdk.org/jeps/444
+ */
+public class TaskProcessorVirtual extends AbstractTaskProcessor {
+
+    /**
+     * Operations solved by one thread of a task. A fraction of the parts of StreamingTaskProducer,
+     * so streamed parts fan out too
+     */
+    public static final int CHUNK_SIZE = StreamingTaskProducer.CHUNK_SIZE / 8;
+
+    /**
+     * Tasks allowed in flight at once, on virtual threads
+     */
+    public static final int MAX_TASKS_IN_FLIGHT = 10000;
+
+    /**
+     * Tasks allowed in flight at once on platform threads, per core
+     */
+    public static final int MAX_TASKS_IN_FLIGHT_PER_CORE = 4;
+
+    /**
+     * Starts a thread per submitted task
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Runs the children of the tasks: the same as executor on virtual threads, a bounded pool otherwise
+     */
+    private final ExecutorService childExecutor;
+
+    /**
+     * One permit per task that can still be started
+     */
+    private final Semaphore inFlight;
+
+    public TaskProcessorVirtual(TaskSolver taskSolver) {
+        super(taskSolver);
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (virtual != null) {
+            executor = virtual;
+            childExecutor = virtual;
+            inFlight = new Semaphore(MAX_TASKS_IN_FLIGHT);
+        }
+        else {
+            executor = Executors.newCachedThreadPool();
+            childExecutor = Executors.newFixedThreadPool(cores);
+            inFlight = new Semaphore(MAX_TASKS_IN_FLIGHT_PER_CORE * cores);
+        }
+    }
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor(), or null before JDK 21
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void process(final Task task) {
+        taskSolver.getTaskResultHandler().taskQueued(task);
+        inFlight.acquireUninterruptibly();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    solve(task);
+                } finally {
+                    inFlight.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Solves a task on the current thread, fanning out chunks to child threads.
+     * The task is reported done once every child has stopped, even if a chunk failed
+     */
+    private void solve(final Task task) {
+        taskSolver.getTaskResultHandler().taskStarted(task);
+        int size = task.getOperations().size();
+        int chunks = Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+        final AtomicBoolean failed = new AtomicBoolean();
+        final CountDownLatch childrenDone = new CountDownLatch(chunks - 1);
+        try {
+            for (int from = CHUNK_SIZE; from < size; from += CHUNK_SIZE) {
+                final int chunkFrom = from;
+                final int chunkTo = Math.min(from + CHUNK_SIZE, size);
+                childExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!failed.get()) {
+                                taskSolver.solve(task, chunkFrom, chunkTo);
+                            }
+                        } catch (RuntimeException e) {
+                            failed.set(true);
+                            e.printStackTrace();
+                        } finally {
+                            childrenDone.countDown();
+                        }
+                    }
+                });
+            }
+            taskSolver.solve(task, 0, Math.min(CHUNK_SIZE, size));
+        } catch (RuntimeException e) {
+            failed.set(true);
+            e.printStackTrace();
+        } finally {
+            awaitChildren(childrenDone, failed);
+            taskSolver.getTaskResultHandler().taskDone(task);
+        }
+    }
+
+    /**
+     * Waits for the children of a task, even if interrupted. An interrupt makes the children not started yet skip
+     * their chunk, and is kept
+     */
+    private static void awaitChildren(CountDownLatch childrenDone, AtomicBoolean failed) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                childrenDone.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                failed.set(true);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        childExecutor.shutdown();
+    }
+
+}
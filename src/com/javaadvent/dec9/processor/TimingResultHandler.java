@@ -0,0 +1,72 @@
+package com.javaadvent.dec9.processor;
+
+import com.javaadvent.dec9.model.Task;
+import com.javaadvent.dec9.result.TaskResultHandler;
+
+/**
+ * Forwards everything to another TaskResultHandler, and measures how long every task took to solve,
+ * from being started to being done. See TaskProcessorAdaptive
+ *
+ * @author florin.bunau
+ */
+abstract class TimingResultHandler extends TaskResultHandler {
+
+    private final TaskResultHandler delegate;
+
+    TimingResultHandler(TaskResultHandler delegate) {
+        // The latch is the one of the delegate, taskDone is forwarded
+        super(null);
+        this.delegate = delegate;
+    }
+
+    /**
+     * Called for every task, or part of a task, once it is done
+     *
+     * @param task Task done
+     * @param nanos Time from being started to being done
+     */
+    abstract void taskTimed(Task task, long nanos);
+
+    @Override
+    public void reportQueryResult(Task task, int index, int val) {
+        delegate.reportQueryResult(task, index, val);
+    }
+
+    @Override
+    public void reportQueryResult(Task task, int index, long val) {
+        delegate.reportQueryResult(task, index, val);
+    }
+
+    @Override
+    public void reportAggregateResult(Task task, int index, long val) {
+        delegate.reportAggregateResult(task, index, val);
+    }
+
+    @Override
+    public void reportAggregateResult(Task task, int index, double val) {
+        delegate.reportAggregateResult(task, index, val);
+    }
+
+    @Override
+    public void reportUpdateResult(Task task, int index) {
+        delegate.reportUpdateResult(task, index);
+    }
+
+    @Override
+    public void taskQueued(Task task) {
+        delegate.taskQueued(task);
+    }
+
+    @Override
+    public void taskStarted(Task task) {
+        delegate.taskStarted(task);
+        // A stamp of its own, startTime is left to the delegate's metrics
+        task.setTimingStartTime(System.nanoTime());
+    }
+
+    @Override
+    public void taskDone(Task task) {
+        taskTimed(task, System.nanoTime() - task.getTimingStartTime());
+        delegate.taskDone(task);
+    }
+}
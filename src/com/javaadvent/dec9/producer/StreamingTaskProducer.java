@@ -0,0 +1,226 @@
+package com.javaadvent.dec9.producer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.javaadvent.dec9.model.OperationBatch;
+import com.javaadvent.dec9.model.Task;
+
+/**
+ * Produces the same kind of tasks as TaskProducer, but streams them in parts of at most CHUNK_SIZE operations
+ *
+ * Generator threads fill the parts and put them in a bounded queue, which the processors drain through getNext.
+ *  - a large task starts being solved as soon as its first part is out, before its last operation exists
+ *  - the generating runs in parallel with the solving, and on several threads
+ *  - at most QUEUE_CAPACITY + generator threads parts exist at once, whatever the task size.
+ *    Generators block on a full queue, so a slow processor slows the producing down
+ *
+ * Each task, then each of its parts, gets its own SplittableRandom split from a seeded root,
+ * so the operations generated do not depend on the number of threads or their timing.
+ * Parts can come out of order, and parts of different tasks can be interleaved.
+ *
+ * @author florin.bunau
+ * See : https://docs.oracle.com/javase/8/docs/api/java/util/SplittableRandom.html
+ */
+public class StreamingTaskProducer implements TaskSource {
+
+    /**
+     * Most operations in a part
+     */
+    public static final int CHUNK_SIZE = 1 << 14;
+
+    /**
+     * Parts waiting in the queue, at most
+     */
+    public static final int QUEUE_CAPACITY = 16;
+
+    /**
+     * Put in the queue once all parts are out
+     */
+    private static final Task END = new Task(new OperationBatch(0), Task.TaskType.XS);
+
+    /**
+     * Parts ready to be processed
+     */
+    private final BlockingQueue<Task> queue;
+
+    /**
+     * Parts to generate, in the order of the input file
+     */
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    /**
+     * Next chunk to be generated
+     */
+    private final AtomicInteger nextChunk = new AtomicInteger();
+
+    /**
+     * Generators still running. The last one to stop puts END in the queue
+     */
+    private final AtomicInteger runningGenerators;
+
+    /**
+     * Fraction of operations that are updates, between 0 and 1
+     */
+    private final double updateRatio;
+
+    public StreamingTaskProducer(double updateRatio) throws FileNotFoundException {
+        this(updateRatio, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param updateRatio Fraction of operations that are updates, between 0 and 1
+     * @param generators Number of generator threads
+     * @param queueCapacity Parts waiting in the queue, at most
+     */
+    public StreamingTaskProducer(double updateRatio, int generators, int queueCapacity) throws FileNotFoundException {
+        this.updateRatio = updateRatio;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        planChunks();
+
+        runningGenerators = new AtomicInteger(generators);
+        for (int g = 0; g < generators; ++g) {
+            Thread generator = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    generate();
+                }
+            }, "task-generator-" + g);
+            generator.setDaemon(true);
+            generator.start();
+        }
+    }
+
+    /**
+     * Reads the task types from the input file and splits every task in chunks. Only the chunks are
+     * planned here, the operations are generated by the generator threads
+     */
+    private void planChunks() throws FileNotFoundException {
+        SplittableRandom root = new SplittableRandom(TaskProducer.RAND_SEED);
+        try (Scanner scanner = new Scanner(new File(TaskProducer.TASK_FILENAME))) {
+            scanner.useDelimiter(",");
+            while (scanner.hasNext()) {
+                Task.TaskType taskType = Task.TaskType.valueOf(scanner.next());
+                SplittableRandom taskRandom = root.split();
+                int parts = (taskType.getRange() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                Task parent = new Task(taskType, parts);
+
+                for (int offset = 0; offset < taskType.getRange(); offset += CHUNK_SIZE) {
+                    int size = Math.min(CHUNK_SIZE, taskType.getRange() - offset);
+                    chunks.add(new Chunk(parent, offset, size, taskRandom.split()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Generator thread loop. Takes chunks in order until none is left.
+     * However it stops, the last generator to stop puts END, so getNext never blocks forever.
+     * A chunk that fails to generate is put as an empty part, so its task is still done once its other parts are
+     */
+    private void generate() {
+        try {
+            int c;
+            while ((c = nextChunk.getAndIncrement()) < chunks.size()) {
+                Chunk chunk = chunks.get(c);
+                chunks.set(c, null);
+                Task part;
+                try {
+                    part = producePart(chunk);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    part = new Task(new OperationBatch(0), chunk.parent, chunk.offset);
+                }
+                queue.put(part);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (runningGenerators.decrementAndGet() == 0) {
+                putEnd();
+            }
+        }
+    }
+
+    /**
+     * Puts END in the queue, waiting for room even if the thread is interrupted. The interrupt is kept
+     */
+    private void putEnd() {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                queue.put(END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Blocks until a part is ready. Will return null if there are no parts anymore
+     */
+    @Override
+    public Task getNext() {
+        try {
+            Task part = queue.take();
+            if (part == END) {
+                // leave it there for the next call
+                queue.put(END);
+                return null;
+            }
+            return part;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * @return Random part for the chunk. Mixes in updates if an update ratio is set
+     */
+    private Task producePart(Chunk chunk) {
+        SplittableRandom random = chunk.random;
+        OperationBatch operations = new OperationBatch(chunk.size);
+
+        for (int i = 0; i < chunk.size; ++i) {
+            if (updateRatio > 0 && random.nextDouble() < updateRatio) {
+                int index = random.nextInt(TaskProducer.MAX_INTERVAL_INDEX_VALUE);
+                operations.addUpdate(index, random.nextInt(Integer.MAX_VALUE));
+            }
+            else {
+                int left = random.nextInt(TaskProducer.MAX_INTERVAL_INDEX_VALUE - TaskProducer.MAX_INTERVAL_LENGTH);
+                operations.addQuery(left, left + random.nextInt(TaskProducer.MAX_INTERVAL_LENGTH));
+            }
+        }
+
+        return new Task(operations, chunk.parent, chunk.offset);
+    }
+
+    /**
+     * A part of a task still to be generated
+     */
+    private static class Chunk {
+        final Task parent;
+        final int offset;
+        final int size;
+        final SplittableRandom random;
+
+        Chunk(Task parent, int offset, int size, SplittableRandom random) {
+            this.parent = parent;
+            this.offset = offset;
+            this.size = size;
+            this.random = random;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.javaadvent.dec9.producer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import com.javaadvent.dec9.model.OperationBatch;
+import com.javaadvent.dec9.model.Task;
+
+/**
+ * Records tasks to a binary workload file, and opens it back as a TaskSource
+ *
+ * File layout, little endian:
+ *  - header : magic "RMQW" (int), format version (int), number of tasks (int), reserved (int)
+ *  - one record per task :
+ *     - record header : task type ordinal (int), number of operations S (int), flags (int), reserved (int)
+ *     - first  : S ints, left indexes of queries, indexes of updates
+ *     - second : S ints, right indexes of queries, values of updates
+ *     - if the WIDE flag is set, S ints of high 32 bits of first, then S ints of high 32 bits of second
+ *     - else if the VALUES_HIGH flag is set, S ints of high 32 bits of second only
+ *     - types  : S bytes, see the type codes of OperationBatch
+ *     - padding to a multiple of 4 bytes
+ *
+ * These are the columns of OperationBatch as they are, so reading a task is a few bulk copies, no parsing.
+ * See TaskFileReader
+ *
+ * Record a workload : java -cp javaadvent-forkjoin.jar com.javaadvent.dec9.producer.TaskFile workload.bin [updateRatio]
+ *
+ * @author florin.bunau
+ */
+public class TaskFile {
+
+    /**
+     * "RMQW"
+     */
+    static final int MAGIC = 0x524D5157;
+
+    /**
+     * Bumped on every change of the layout
+     */
+    static final int VERSION = 2;
+
+    /**
+     * Oldest version still read. Version 1 is version 2 without the VALUES_HIGH flag
+     */
+    static final int OLDEST_VERSION = 1;
+
+    static final int HEADER_BYTES = 16;
+
+    static final int RECORD_HEADER_BYTES = 16;
+
+    /**
+     * Record flag : the batch has the high index columns
+     */
+    static final int WIDE = 1;
+
+    /**
+     * Record flag : the batch is not wide, but has the high column of second, for set values beyond an int
+     */
+    static final int VALUES_HIGH = 2;
+
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Size of the buffer used to write the file
+     */
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private TaskFile() {
+    }
+
+    /**
+     * @param size Number of operations
+     * @param flags Flags of the record
+     * @return Size in bytes of the columns of a record, padding included
+     */
+    static long recordBodyBytes(int size, int flags) {
+        int columns = (flags & WIDE) != 0 ? 4 : (flags & VALUES_HIGH) != 0 ? 3 : 2;
+        long ints = (long) columns * size;
+        return 4 * ints + ((size + 3) & ~3L);
+    }
+
+    /**
+     * Writes every task of a source, until it runs out
+     *
+     * @param source Tasks to record. Must give whole tasks, not parts
+     * @param file File to write, replaced if it exists
+     * @return Number of tasks written
+     * @throws IOException If the file can not be written
+     */
+    public static int write(TaskSource source, Path file) throws IOException {
+        int tasks = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ORDER);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0);
+
+            Task task;
+            while ((task = source.getNext()) != null) {
+                if (task.getRoot() != task) {
+                    throw new IllegalArgumentException("Can not record a part of a task: " + task);
+                }
+                writeRecord(channel, buffer, task);
+                ++tasks;
+            }
+            flush(channel, buffer);
+
+            // The number of tasks is only known now
+            buffer.putInt(tasks).flip();
+            channel.write(buffer, 8);
+        }
+        return tasks;
+    }
+
+    private static void writeRecord(FileChannel channel, ByteBuffer buffer, Task task) throws IOException {
+        OperationBatch operations = task.getOperations();
+        int size = operations.size();
+        int flags = operations.isWide() ? WIDE : operations.getRightsHigh() != null ? VALUES_HIGH : 0;
+
+        if (buffer.remaining() < RECORD_HEADER_BYTES) {
+            flush(channel, buffer);
+        }
+        buffer.putInt(task.getTaskType().ordinal()).putInt(size).putInt(flags).putInt(0);
+
+        writeInts(channel, buffer, operations.getLefts(), size);
+        writeInts(channel, buffer, operations.getRights(), size);
+        if ((flags & WIDE) != 0) {
+            writeInts(channel, buffer, operations.getLeftsHigh(), size);
+        }
+        if (flags != 0) {
+            writeInts(channel, buffer, operations.getRightsHigh(), size);
+        }
+
+        byte[] types = operations.getTypes();
+        for (int from = 0; from < size; ) {
+            if (!buffer.hasRemaining()) {
+                flush(channel, buffer);
+            }
+            int count = Math.min(size - from, buffer.remaining());
+            buffer.put(types, from, count);
+            from += count;
+        }
+        for (int pad = size; (pad & 3) != 0; ++pad) {
+            if (!buffer.hasRemaining()) {
+                flush(channel, buffer);
+            }
+            buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * Writes the first size ints of a column, a buffer at a time
+     */
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] column, int size) throws IOException {
+        for (int from = 0; from < size; ) {
+            if (buffer.remaining() < 4) {
+                flush(channel, buffer);
+            }
+            int count = Math.min(size - from, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(column, from, count);
+            buffer.position(buffer.position() + 4 * count);
+            from += count;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Opens a workload file
+     *
+     * @param file File written by write
+     * @return Source of the recorded tasks, in the recorded order
+     * @throws IOException If the file can not be read, or is not a supported workload file
+     */
+    public static TaskFileReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated workload file header: " + file);
+                }
+            }
+            header.flip();
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a workload file: " + file);
+            }
+            int version = header.getInt();
+            if (version < OLDEST_VERSION || version > VERSION) {
+                throw new IOException("Unsupported workload file version " + version + ": " + file);
+            }
+            return new TaskFileReader(channel, header.getInt());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Records the tasks of tasks.txt
+     *
+     * @param args Workload file to write, and optionally the update ratio
+     */
+    public static void main(String[] args) throws IOException {
+        double updateRatio = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        int tasks = write(new TaskProducer(updateRatio), Paths.get(args[0]));
+        System.out.println(tasks + " tasks written to " + args[0]);
+    }
+
+}
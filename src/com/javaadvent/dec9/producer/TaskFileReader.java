@@ -0,0 +1,144 @@
+package com.javaadvent.dec9.producer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.javaadvent.dec9.model.OperationBatch;
+import com.javaadvent.dec9.model.Task;
+
+/**
+ * Replays the tasks of a workload file, see TaskFile
+ *
+ * Every call maps the next record and copies its columns straight into the arrays of an OperationBatch.
+ * There is no parsing and no per operation work, so replaying is bound by the disk or the page cache.
+ * Only one record is mapped at a time, so files are not limited to the 2GB of a single mapping.
+ *
+ * The file is closed once the last task is read, or by close
+ *
+ * @author florin.bunau
+ */
+public class TaskFileReader implements TaskSource, Closeable {
+
+    private final FileChannel channel;
+
+    /**
+     * Number of tasks in the file
+     */
+    private final int taskCount;
+
+    /**
+     * Tasks read so far
+     */
+    private int tasksRead;
+
+    /**
+     * Offset in the file of the next record
+     */
+    private long position = TaskFile.HEADER_BYTES;
+
+    /**
+     * Reused to read record headers, too small to be worth a mapping
+     */
+    private final ByteBuffer header = ByteBuffer.allocate(TaskFile.RECORD_HEADER_BYTES).order(TaskFile.ORDER);
+
+    TaskFileReader(FileChannel channel, int taskCount) {
+        this.channel = channel;
+        this.taskCount = taskCount;
+    }
+
+    /**
+     * @return Number of tasks in the file
+     */
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    /**
+     * @return The next recorded task. Will return null if there are no tasks anymore
+     */
+    @Override
+    public synchronized Task getNext() {
+        if (tasksRead == taskCount) {
+            close();
+            return null;
+        }
+        try {
+            Task task = readRecord();
+            ++tasksRead;
+            return task;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Task readRecord() throws IOException {
+        header.clear();
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0) {
+                throw new IOException("Truncated workload file, task " + tasksRead + " of " + taskCount + " is missing");
+            }
+        }
+        header.flip();
+        int type = header.getInt();
+        Task.TaskType[] taskTypes = Task.TaskType.values();
+        if (type < 0 || type >= taskTypes.length) {
+            throw new IOException("Unknown task type " + type + ", task " + tasksRead + " of " + taskCount);
+        }
+        Task.TaskType taskType = taskTypes[type];
+        int size = header.getInt();
+        if (size < 0) {
+            throw new IOException("Negative operation count " + size + ", task " + tasksRead + " of " + taskCount);
+        }
+        int flags = header.getInt();
+
+        long bodyBytes = TaskFile.recordBodyBytes(size, flags);
+        if (bodyBytes > Integer.MAX_VALUE) {
+            throw new IOException("Task record too large: " + bodyBytes + " bytes");
+        }
+        ByteBuffer body = map(position + TaskFile.RECORD_HEADER_BYTES, bodyBytes);
+        position += TaskFile.RECORD_HEADER_BYTES + bodyBytes;
+
+        IntBuffer ints = body.asIntBuffer();
+        int[] first = new int[size];
+        int[] second = new int[size];
+        ints.get(first).get(second);
+        int[] firstHigh = null;
+        int[] secondHigh = null;
+        if ((flags & TaskFile.WIDE) != 0) {
+            firstHigh = new int[size];
+            ints.get(firstHigh);
+        }
+        if ((flags & (TaskFile.WIDE | TaskFile.VALUES_HIGH)) != 0) {
+            secondHigh = new int[size];
+            ints.get(secondHigh);
+        }
+        byte[] types = new byte[size];
+        body.position(4 * ints.position());
+        body.get(types);
+
+        return new Task(new OperationBatch(types, first, second, firstHigh, secondHigh), taskType);
+    }
+
+    private ByteBuffer map(long offset, long size) throws IOException {
+        if (offset + size > channel.size()) {
+            throw new IOException("Truncated workload file, task " + tasksRead + " ends past " + channel.size() + " bytes");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        return buffer.order(TaskFile.ORDER);
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -2,46 +2,59 @@ package com.javaadvent.dec9.producer;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
 
-import com.javaadvent.dec9.model.Operation;
+import com.javaadvent.dec9.model.OperationBatch;
 import com.javaadvent.dec9.model.Task;
 
 /**
  * Produces query tasks of different sizes
  * Reads data from a file of order and size of tasks, and then generates a random task
  * 
+ * Optionally a fraction of the operations are random point updates, interleaved with the queries
+ * 
  * @author florin.bunau
  */
-public class TaskProducer {
+public class TaskProducer implements TaskSource {
 
-    private static final int RAND_SEED = 100;
+    static final int RAND_SEED = 100;
     private static Random randomGenerator = new Random(RAND_SEED);
 
     /**
      * In this file we define the tasks to be processed and their type
      */
-    private static final String TASK_FILENAME = "tasks.txt";
+    static final String TASK_FILENAME = "tasks.txt";
 
     /**
      * Maximum span of an interval from left margin to right margin
      */
-    private static final int MAX_INTERVAL_LENGTH = 10000;
+    static final int MAX_INTERVAL_LENGTH = 10000;
     
     /**
      * Maximum index reached by the right margin of the interval
      */
-    private static final int MAX_INTERVAL_INDEX_VALUE = 10000000;
+    static final int MAX_INTERVAL_INDEX_VALUE = 10000000;
     
     /**
      * Used to go through comma separated tasks in input file
      */
     private final Scanner scanner;
     
+    /**
+     * Fraction of operations that are updates, between 0 and 1
+     */
+    private final double updateRatio;
+    
     public TaskProducer() throws FileNotFoundException {
+        this(0);
+    }
+    
+    /**
+     * @param updateRatio Fraction of operations that are updates, between 0 and 1
+     */
+    public TaskProducer(double updateRatio) throws FileNotFoundException {
+        this.updateRatio = updateRatio;
         scanner = new Scanner(new File(TASK_FILENAME));
         scanner.useDelimiter(",");
     }
@@ -49,6 +62,7 @@ public class TaskProducer {
     /**
      * @return Returns the next task according to the input file. Will return null if there are no tasks anymore
      */
+    @Override
     public Task getNext() {
         if (scanner == null) {
             return null;
@@ -63,24 +77,38 @@ public class TaskProducer {
 
     /**
      * @param taskType Type of task to be produced
-     * @return Random task of the specified type
+     * @return Random task of the specified type. Mixes in updates if an update ratio is set
      */
     private Task produceQueryTask(Task.TaskType taskType) {
-        List<Operation> operations = new ArrayList<Operation>();
+        OperationBatch operations = new OperationBatch(taskType.getRange());
 
         for (int i = 0; i < taskType.getRange(); ++i) {
-            operations.add(getRandomQueryInterval());	
+            if (updateRatio > 0 && randomGenerator.nextDouble() < updateRatio) {
+                addRandomUpdate(operations);
+            }
+            else {
+                addRandomQueryInterval(operations);
+            }
         }
         
         return new Task(operations, taskType);
     }
     
     /**
-     * @return A random generated interval
+     * Adds a random generated interval
      */
-    private Operation.QueryIntervalOperation getRandomQueryInterval() {
+    private void addRandomQueryInterval(OperationBatch operations) {
         int left =  randomGenerator.nextInt(MAX_INTERVAL_INDEX_VALUE - MAX_INTERVAL_LENGTH);
         int right = left + randomGenerator.nextInt(MAX_INTERVAL_LENGTH);
-        return new Operation.QueryIntervalOperation(left, right);
+        operations.addQuery(left, right);
+    }
+    
+    /**
+     * Adds a random generated point update
+     */
+    private void addRandomUpdate(OperationBatch operations) {
+        int index = randomGenerator.nextInt(MAX_INTERVAL_INDEX_VALUE);
+        int val = randomGenerator.nextInt(Integer.MAX_VALUE);
+        operations.addUpdate(index, val);
     }
 }
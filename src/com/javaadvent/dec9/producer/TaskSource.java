@@ -0,0 +1,16 @@
+package com.javaadvent.dec9.producer;
+
+import com.javaadvent.dec9.model.Task;
+
+/**
+ * Source of tasks for the processors
+ * 
+ * @author florin.bunau
+ */
+public interface TaskSource {
+
+    /**
+     * @return The next task, or part of a task. Null if there are no tasks anymore
+     */
+    Task getNext();
+}
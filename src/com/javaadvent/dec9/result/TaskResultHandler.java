@@ -2,11 +2,16 @@ package com.javaadvent.dec9.result;
 
 import java.util.concurrent.CountDownLatch;
 
+import com.javaadvent.dec9.metrics.TaskMetrics;
 import com.javaadvent.dec9.model.Task;
 
 /**
  * Handles updates on results being obtained by solving tasks
  * This is used to measure the performance of different implementations
+ * 
+ * Processors tell it when a task is queued, started and done. With TaskMetrics, the queue wait and 
+ * service time of every whole task are recorded. A task streamed in parts is queued and started with
+ * its first part, and done with its last one
  *  
  * @author florin.bunau
  */
@@ -17,27 +22,104 @@ public class TaskResultHandler {
      */
     private CountDownLatch allTasksDoneLatch;
     
+    /**
+     * Where timings are recorded, null to not record them
+     */
+    private final TaskMetrics metrics;
+    
     /**
      * Initialize this handler with a latch we will use to count down tasks solved
      * @param allTasksDoneLatch Latch on which we will countdown everytime we solve a task completly
      */
     public TaskResultHandler(CountDownLatch allTasksDoneLatch) {
+        this(allTasksDoneLatch, null);
+    }
+    
+    /**
+     * @param allTasksDoneLatch Latch on which we will countdown everytime we solve a task completly
+     * @param metrics Where the timings of the tasks are recorded
+     */
+    public TaskResultHandler(CountDownLatch allTasksDoneLatch, TaskMetrics metrics) {
         this.allTasksDoneLatch = allTasksDoneLatch;
+        this.metrics = metrics;
     }
     
 	public void reportQueryResult(Task task, int index, int val) {
 	    // Nowhere to report for this example
 	}
 	
+	/**
+	 * Result of a query on an array beyond 2^31 values
+	 */
+	public void reportQueryResult(Task task, int index, long val) {
+	    // Nowhere to report for this example
+	}
+	
+	/**
+	 * Result of an aggregate on a LongAggregationTree. Argmin and argmax are reported with reportQueryResult
+	 */
+	public void reportAggregateResult(Task task, int index, long val) {
+	    // Nowhere to report for this example
+	}
+	
+	/**
+	 * Result of an aggregate on a DoubleAggregationTree. Argmin and argmax are reported with reportQueryResult
+	 */
+	public void reportAggregateResult(Task task, int index, double val) {
+	    // Nowhere to report for this example
+	}
+	
 	public void reportUpdateResult(Task task, int index) {
 	    // Nowhere to report for this example
 	}
 	
 	/**
-	 * Task is done, count it down.
+	 * Task was given to a processor, and waits to be solved
+	 */
+	public void taskQueued(Task task) {
+	    if (metrics != null) {
+	        long now = System.nanoTime();
+	        task.setQueuedTime(now);
+	        Task root = task.getRoot();
+	        if (root != task) {
+	            root.stampQueuedTime(now);
+	        }
+	    }
+	}
+	
+	/**
+	 * Task starts being solved
+	 */
+	public void taskStarted(Task task) {
+	    if (metrics != null) {
+	        long now = System.nanoTime();
+	        task.setStartTime(now);
+	        Task root = task.getRoot();
+	        if (root != task) {
+	            root.stampStartTime(now);
+	        }
+	    }
+	}
+	
+	/**
+	 * Task is done, count it down. A part of a task is only counted down with the last part of its task
+	 * Indexes reported for a part are relative to the part, see Task.getOffset
 	 * @param task Task that has been completed
 	 */
 	public void taskDone(Task task) {
-	    allTasksDoneLatch.countDown();
+	    if (metrics != null) {
+	        task.setDoneTime(System.nanoTime());
+	        metrics.recordOperations(task.getOperations().size());
+	    }
+	    if (task.markDone()) {
+	        Task root = task.getRoot();
+	        if (metrics != null) {
+	            // markDone ordered the stamps of the other parts before this
+	            root.setDoneTime(task.getDoneTime());
+	            metrics.record(root);
+	        }
+	        root.releaseSnapshot();
+	        allTasksDoneLatch.countDown();
+	    }
 	}
 }
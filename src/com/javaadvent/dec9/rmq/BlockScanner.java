@@ -0,0 +1,18 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * Finds the minimum of a short, contiguous run of values, for RMQBlockEngine
+ *
+ * @author florin.bunau
+ */
+interface BlockScanner {
+
+    /**
+     * @param values Array to scan
+     * @param from First index, inclusive
+     * @param to Last index, exclusive. Greater than from
+     * @return Index of the minimum value in [from, to). The leftmost one on ties
+     */
+    int argMin(int[] values, int from, int to);
+
+}
@@ -0,0 +1,76 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * Makes an engine with long indexes safe to query and update from many threads, see RMQConcurrentEngine
+ *
+ * The engine is also an RMQEngine, so tasks with int indexes and wide tasks go through the same lock,
+ * and TaskSolver still sees a LongRMQEngine for the wide ones.
+ *
+ * Like RMQConcurrentEngine, this relies on the wrapped engine never failing on a torn read, which is the case
+ * for RMQOffHeapSegmentTree: its nodes always hold valid indexes.
+ *
+ * @author florin.bunau
+ * See : http://docs.oracle.com/javase/8/docs/api/java/util/concurrent/locks/StampedLock.html
+ */
+public class LongRMQConcurrentEngine extends RMQConcurrentEngine implements LongRMQEngine {
+
+    /**
+     * Engine doing the actual work, the same as the one wrapped by the superclass
+     */
+    private final LongRMQEngine longRmq;
+
+    public <E extends RMQEngine & LongRMQEngine> LongRMQConcurrentEngine(E rmq) {
+        super(rmq);
+        this.longRmq = rmq;
+    }
+
+    @Override
+    public long query(long i, long j) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            long result = longRmq.query(i, j);
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return longRmq.query(i, j);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void update(long i, int val) {
+        long stamp = lock.writeLock();
+        try {
+            longRmq.update(i, val);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int get(long i) {
+        long stamp = lock.tryOptimisticRead();
+        int value = longRmq.get(i);
+        if (stamp != 0 && lock.validate(stamp)) {
+            return value;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return longRmq.get(i);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long length() {
+        return longRmq.length();
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * Range Minimum Query engine over an integer array indexed by longs, for arrays beyond 2^31 values
+ *
+ * Same contract as RMQEngine: query returns the leftmost index of the minimum value in [i, j]
+ *
+ * @author florin.bunau
+ */
+public interface LongRMQEngine {
+
+    /**
+     * @param i Left index
+     * @param j Right index
+     * @return Index of minimum value in the array in the specified index range
+     */
+    long query(long i, long j);
+
+    /**
+     * Update the value at index i to be val
+     * @param i Index to be updated
+     * @param val Value to use in the update
+     */
+    void update(long i, int val);
+
+    /**
+     * @param i Index in the array
+     * @return Value at index i
+     */
+    int get(long i);
+
+    /**
+     * @return Number of values this engine answers queries on
+     */
+    long length();
+}
@@ -0,0 +1,149 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * Implements a block decomposed RMQ, scanning the ends of a query with SIMD instructions
+ *
+ * The array is split into blocks of BLOCK_SIZE values, 4 cache lines each:
+ *  - the minimum of each block is kept in an RMQCompactSegmentTree, the summary, with the index it is at
+ *  - Query(i, j) scans the partial blocks at both ends straight from values[], and asks the summary
+ *    for the whole blocks in between
+ *  - Update(i, v) rescans the block of i, and updates the summary if the block minimum changed
+ *
+ * Scans read contiguous memory and compare 8 or 16 values at once with the Vector API, see VectorBlockScanner.
+ * Besides values[], memory is 16 bytes per block, a quarter of an int per value, against 4N ints for
+ * RMQSegmentTree and 2N ints for RMQCompactSegmentTree. Queries cost more than with RMQCompactSegmentTree :
+ * the two end blocks are read in full, where the tree reads one value per level.
+ * Larger blocks save more memory but make the scans longer.
+ *
+ * Without jdk.incubator.vector at runtime, blocks are scanned one value at a time by ScalarBlockScanner
+ *
+ * Init   : O(N)
+ * Query  : O(BLOCK_SIZE + log (N / BLOCK_SIZE))
+ * Update : O(BLOCK_SIZE + log (N / BLOCK_SIZE))
+ *
+ * @author florin.bunau
+ * See : https://en.wikipedia.org/wiki/Range_minimum_query#Solution_using_constant_time_and_linearithmic_space
+ */
+public class RMQBlockEngine implements RMQEngine {
+
+    /**
+     * log2 of the block size
+     */
+    private static final int BLOCK_SHIFT = 6;
+
+    /**
+     * Values in a block
+     */
+    public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    /**
+     * Vector scanner if the Vector API is available, scalar otherwise
+     */
+    private static final BlockScanner SCANNER = newScanner();
+
+    /**
+     * An array of values to be queried and updated
+     */
+    public final int[] values;
+
+    /**
+     * blockMins[b] holds the minimum value of block b
+     */
+    private final int[] blockMins;
+
+    /**
+     * blockArgs[b] holds the index of the minimum value of block b
+     */
+    private final int[] blockArgs;
+
+    /**
+     * Over blockMins, which it updates
+     */
+    private final RMQCompactSegmentTree summary;
+
+    public RMQBlockEngine(int[] values) {
+        this.values = values;
+
+        int blocks = (values.length + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        blockMins = new int[blocks];
+        blockArgs = new int[blocks];
+        for (int b = 0; b < blocks; ++b) {
+            blockArgs[b] = SCANNER.argMin(values, b << BLOCK_SHIFT, blockEnd(b));
+            blockMins[b] = values[blockArgs[b]];
+        }
+        summary = new RMQCompactSegmentTree(blockMins);
+    }
+
+    /**
+     * Loads VectorBlockScanner by name, so this class still loads when jdk.incubator.vector is not resolved
+     */
+    private static BlockScanner newScanner() {
+        try {
+            return (BlockScanner) Class.forName("com.javaadvent.dec9.rmq.VectorBlockScanner").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarBlockScanner();
+        }
+    }
+
+    /**
+     * @return Index after the last one of block b
+     */
+    private int blockEnd(int b) {
+        return Math.min((b + 1) << BLOCK_SHIFT, values.length);
+    }
+
+    @Override
+    public int query(int i, int j) {
+        int bi = i >> BLOCK_SHIFT;
+        int bj = j >> BLOCK_SHIFT;
+        if (bi == bj) {
+            return SCANNER.argMin(values, i, j + 1);
+        }
+
+        // Candidates are compared packed as (value << 32) | index, so on equal values the smaller index wins.
+        // The value of the middle one comes from blockMins, not from a far away values[] line
+        int left = SCANNER.argMin(values, i, blockEnd(bi));
+        long result = pack(values[left], left);
+        if (bj - bi > 1) {
+            int b = summary.query(bi + 1, bj - 1);
+            result = Math.min(result, pack(blockMins[b], blockArgs[b]));
+        }
+        int right = SCANNER.argMin(values, bj << BLOCK_SHIFT, j + 1);
+        result = Math.min(result, pack(values[right], right));
+        return (int) result;
+    }
+
+    private static long pack(int value, int index) {
+        return ((long) value << 32) | index;
+    }
+
+    @Override
+    public void update(int i, int val) {
+        values[i] = val;
+
+        int b = i >> BLOCK_SHIFT;
+        int arg = SCANNER.argMin(values, b << BLOCK_SHIFT, blockEnd(b));
+        blockArgs[b] = arg;
+        if (blockMins[b] != values[arg]) {
+            summary.update(b, values[arg]);
+        }
+    }
+
+    @Override
+    public int get(int i) {
+        return values[i];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @return true if blocks are scanned with the Vector API
+     */
+    public static boolean isVectorized() {
+        return !(SCANNER instanceof ScalarBlockScanner);
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.javaadvent.dec9.rmq;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches query results in front of an RMQ engine, for clients sending the same intervals again
+ *
+ * The cache is a fixed size, set associative table : an interval hashes to a set of WAYS entries, and a hit
+ * is a few reads, with no lock. A full set evicts with the CLOCK algorithm : entries hit since the last pass
+ * get a second chance. Only a miss allocates, for the new entry.
+ *
+ * Results are never stale. The array is split in segments of SEGMENT_SIZE values, each with an epoch
+ * bumped by every update of one of its values. An entry keeps the sum of the epochs of the segments under
+ * its interval, taken before the query ran, and is only used while that sum has not changed.
+ * Intervals over more than MAX_SEGMENTS segments would be slow to check, they use a global epoch bumped by
+ * every update instead.
+ *
+ * An update changes the engine first, then bumps the epochs, so an entry computed against the old values
+ * can not be validated by the new epochs. The wrapped engine must be safe for concurrent use itself,
+ * see RMQConcurrentEngine
+ *
+ * Hit  : O(1)
+ * Miss : the wrapped query
+ *
+ * @author florin.bunau
+ * See : https://en.wikipedia.org/wiki/Page_replacement_algorithm#Clock
+ */
+public class RMQCachedEngine implements RMQEngine {
+
+    /**
+     * log2 of the number of values under an epoch
+     */
+    private static final int SEGMENT_SHIFT = 12;
+
+    /**
+     * Values under an epoch
+     */
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    /**
+     * Intervals over more segments than this use the global epoch
+     */
+    public static final int MAX_SEGMENTS = 4;
+
+    /**
+     * Entries in a set
+     */
+    public static final int WAYS = 4;
+
+    /**
+     * Engine doing the actual work
+     */
+    private final RMQEngine rmq;
+
+    /**
+     * WAYS entries per set, set after set
+     */
+    private final AtomicReferenceArray<Entry> entries;
+
+    /**
+     * Number of sets - 1, the number of sets is a power of 2
+     */
+    private final int setMask;
+
+    /**
+     * Next slot the CLOCK hand looks at in every set
+     */
+    private final AtomicIntegerArray hands;
+
+    /**
+     * Epoch of every segment
+     */
+    private final AtomicLongArray epochs;
+
+    /**
+     * Bumped by every update
+     */
+    private final AtomicLong globalEpoch = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param rmq Engine to cache the results of
+     * @param capacity Most results cached, rounded up to a power of 2
+     */
+    public RMQCachedEngine(RMQEngine rmq, int capacity) {
+        this.rmq = rmq;
+        int sets = Math.max(1, (capacity + WAYS - 1) / WAYS);
+        sets = sets == 1 ? 1 : Integer.highestOneBit(sets - 1) << 1;
+        this.setMask = sets - 1;
+        this.entries = new AtomicReferenceArray<>(sets * WAYS);
+        this.hands = new AtomicIntegerArray(sets);
+        this.epochs = new AtomicLongArray((rmq.size() >> SEGMENT_SHIFT) + 1);
+    }
+
+    @Override
+    public int query(int i, int j) {
+        int set = set(i, j);
+        long signature = signature(i, j);
+
+        for (int w = set * WAYS; w < set * WAYS + WAYS; ++w) {
+            Entry entry = entries.get(w);
+            if (entry != null && entry.left == i && entry.right == j && entry.signature == signature) {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                hits.increment();
+                return entry.result;
+            }
+        }
+
+        misses.increment();
+        int result = rmq.query(i, j);
+        insert(set, new Entry(i, j, result, signature));
+        return result;
+    }
+
+    /**
+     * Puts an entry in a set: over a stale entry of the same interval or an empty slot if there is one,
+     * otherwise over the first entry the CLOCK hand finds not referenced
+     */
+    private void insert(int set, Entry entry) {
+        int base = set * WAYS;
+        for (int w = base; w < base + WAYS; ++w) {
+            Entry old = entries.get(w);
+            if (old == null || (old.left == entry.left && old.right == entry.right)) {
+                entries.lazySet(w, entry);
+                return;
+            }
+        }
+
+        int hand = hands.get(set);
+        for (int step = 0; step < WAYS; ++step) {
+            Entry old = entries.get(base + hand);
+            if (!old.referenced) {
+                break;
+            }
+            old.referenced = false;
+            hand = (hand + 1) & (WAYS - 1);
+        }
+        entries.lazySet(base + hand, entry);
+        hands.lazySet(set, (hand + 1) & (WAYS - 1));
+    }
+
+    private int set(int i, int j) {
+        long key = ((long) i << 32) | (j & 0xFFFFFFFFL);
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key >>> 32) & setMask;
+    }
+
+    /**
+     * @return Sum of the epochs of the segments under [i, j], or the global epoch for long intervals
+     */
+    private long signature(int i, int j) {
+        int first = i >> SEGMENT_SHIFT;
+        int last = j >> SEGMENT_SHIFT;
+        if (last - first >= MAX_SEGMENTS) {
+            return globalEpoch.get();
+        }
+        long signature = 0;
+        for (int s = first; s <= last; ++s) {
+            signature += epochs.get(s);
+        }
+        return signature;
+    }
+
+    @Override
+    public void update(int i, int val) {
+        rmq.update(i, val);
+        // Published after the update, see the class comment
+        epochs.incrementAndGet(i >> SEGMENT_SHIFT);
+        globalEpoch.incrementAndGet();
+    }
+
+    /**
+     * Offline batches sweep the values, they go to the wrapped engine and are not cached
+     */
+    @Override
+    public void queryOffline(int[] lefts, int[] rights, int from, int to, int[] out) {
+        rmq.queryOffline(lefts, rights, from, to, out);
+    }
+
+    @Override
+    public int get(int i) {
+        return rmq.get(i);
+    }
+
+    @Override
+    public int size() {
+        return rmq.size();
+    }
+
+    /**
+     * @return Queries answered from the cache so far
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Queries answered by the wrapped engine so far
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * A cached result. Immutable but for the CLOCK reference bit, which is only a hint
+     */
+    private static class Entry {
+        final int left;
+        final int right;
+        final int result;
+        final long signature;
+        boolean referenced;
+
+        Entry(int left, int right, int result, long signature) {
+            this.left = left;
+            this.right = right;
+            this.result = result;
+            this.signature = signature;
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.javaadvent.dec9.rmq;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Implements a non recursive, bottom up Segment Tree data structure
+ *
+ * Same Query / Update operations as RMQSegmentTree, but:
+ *  - leaves are the values array itself, at positions [N .. 2N) of an implicit tree.
+ *    Only the N - 1 internal nodes are stored, no power of 2 padding
+ *  - every node packs the minimum value and its index in one long : (value << 32) | index
+ *    so comparing two nodes is a single long comparison and never jumps back into values[].
+ *    On equal values the smaller index wins, which keeps the leftmost minimum
+ *  - query and update are plain loops going up the tree, no call stack
+ *
+ * Node ids go up to 2N, in ints, so the tree holds at most MAX_SIZE values
+ *
+ * Init   : O(N), can be split across a ForkJoinPool
+ * Query  : O(log N)
+ * Update : O(log N)
+ *
+ * @author florin.bunau
+ * See : http://codeforces.com/blog/entry/18051
+ */
+public class RMQCompactSegmentTree implements RMQEngine {
+
+    /**
+     * Packs a value and its index
+     */
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Most values a tree holds, so node ids up to 2N fit an int
+     */
+    public static final int MAX_SIZE = 1 << 30;
+
+    /**
+     * Subtrees with fewer nodes than this are built serially by a parallel init
+     */
+    private static final int PARALLEL_INIT_THRESHOLD = 1 << 16;
+
+    /**
+     * nodes[k] for 1 <= k < N holds the packed minimum of its children 2k and 2k + 1
+     * Node k >= N is the leaf values[k - N]
+     */
+    private final long[] nodes;
+
+    /**
+     * An array of values to be queried and updated
+     */
+    public final int[] values;
+
+    /**
+     * Number of values
+     */
+    private final int n;
+
+    public RMQCompactSegmentTree(int[] values) {
+        this(values, null);
+    }
+
+    /**
+     * @param values Values to be queried and updated
+     * @param pool Pool used to build independent subtrees in parallel. The tree is identical to a serial build
+     */
+    public RMQCompactSegmentTree(int[] values, ForkJoinPool pool) {
+        if (values.length > MAX_SIZE) {
+            throw new IllegalArgumentException("Too many values: " + values.length + ", at most " + MAX_SIZE
+                                               + ", see RMQOffHeapSegmentTree");
+        }
+        this.values = values;
+        this.n = values.length;
+        this.nodes = new long[Math.max(n, 1)];
+
+        if (pool == null || n < PARALLEL_INIT_THRESHOLD) {
+            init();
+        }
+        else {
+            pool.invoke(new InitSubtree(1));
+        }
+    }
+
+    /**
+     * Computes the internal nodes, from the last one up to the root. this is O(n)
+     */
+    private void init() {
+        for (int k = n - 1; k > 0; --k) {
+            nodes[k] = Math.min(node(2 * k), node(2 * k + 1));
+        }
+    }
+
+    /**
+     * Builds the subtree of a node level by level, from its deepest level up. 
+     * Level d of the subtree of k is the contiguous range of nodes [k * 2^d, (k + 1) * 2^d)
+     * 
+     * @param k Id of the subtree root
+     */
+    private void initSubtree(int k) {
+        int depth = 0;
+        while (((long) k << (depth + 1)) < n) {
+            ++depth;
+        }
+        for (int d = depth; d >= 0; --d) {
+            int from = k << d;
+            int to = (int) Math.min(((long) k + 1) << d, n);
+            for (int p = to - 1; p >= from; --p) {
+                nodes[p] = Math.min(node(2 * p), node(2 * p + 1));
+            }
+        }
+    }
+
+    /**
+     * Parallel version of init. Splits a node into its two children until the subtree
+     * holds less than PARALLEL_INIT_THRESHOLD nodes, and builds those with initSubtree
+     */
+    private class InitSubtree extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Subtree root. The subtree holds about n / k nodes
+         */
+        final int k;
+
+        InitSubtree(int k) {
+            this.k = k;
+        }
+
+        @Override
+        protected void compute() {
+            if (n / k < PARALLEL_INIT_THRESHOLD) {
+                initSubtree(k);
+            }
+            else {
+                invokeAll(new InitSubtree(2 * k), new InitSubtree(2 * k + 1));
+                nodes[k] = Math.min(node(2 * k), node(2 * k + 1));
+            }
+        }
+    }
+
+    /**
+     * @param k Id of the node
+     * @return Packed minimum of node k
+     */
+    private long node(int k) {
+        return k >= n ? pack(values[k - n], k - n) : nodes[k];
+    }
+
+    private static long pack(int value, int index) {
+        return ((long) value << 32) | index;
+    }
+
+    @Override
+    public int query(int i, int j) {
+        long result = Long.MAX_VALUE;
+
+        // Leaves are not stored, so the first step reads them straight from values[]
+        int l = i + n;
+        int r = j + n + 1;
+        if ((l & 1) != 0) {
+            result = pack(values[i], i);
+            ++l;
+        }
+        if ((r & 1) != 0) {
+            --r;
+            result = Math.min(result, pack(values[r - n], r - n));
+        }
+
+        // Internal nodes from here on
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                result = Math.min(result, nodes[l++]);
+            }
+            if ((r & 1) != 0) {
+                result = Math.min(result, nodes[--r]);
+            }
+        }
+
+        return (int) (result & INDEX_MASK);
+    }
+
+    @Override
+    public void update(int i, int val) {
+        values[i] = val;
+
+        // rebuild tree cache going back up
+        for (int k = (i + n) >> 1; k > 0; k >>= 1) {
+            nodes[k] = Math.min(node(2 * k), node(2 * k + 1));
+        }
+    }
+
+    @Override
+    public int get(int i) {
+        return values[i];
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    /**
+     * @return The internal nodes, for RMQIndexFile. Do not modify
+     */
+    long[] getNodes() {
+        return nodes;
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.javaadvent.dec9.rmq;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Makes an RMQ engine safe to query and update from many threads
+ *
+ * Readers never write to shared memory on the fast path: a query runs as an optimistic read and is
+ * only validated against the lock stamp afterwards. If an update slipped in while the query was running,
+ * the query is retried under a read lock. Updates are serialized by the write lock.
+ *
+ * This relies on the wrapped engine never failing on a torn read: its nodes must always hold valid indexes,
+ * which is the case for RMQSegmentTree and RMQCompactSegmentTree.
+ * When updates are rare, queries run at nearly the speed of the wrapped engine.
+ *
+ * @author florin.bunau
+ * See : http://docs.oracle.com/javase/8/docs/api/java/util/concurrent/locks/StampedLock.html
+ */
+public class RMQConcurrentEngine implements RMQEngine {
+
+    /**
+     * Engine doing the actual work
+     */
+    private final RMQEngine rmq;
+
+    /**
+     * Guards rmq. Shared with the long index operations of LongRMQConcurrentEngine
+     */
+    final StampedLock lock = new StampedLock();
+
+    public RMQConcurrentEngine(RMQEngine rmq) {
+        this.rmq = rmq;
+    }
+
+    @Override
+    public int query(int i, int j) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int result = rmq.query(i, j);
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return rmq.query(i, j);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The whole bulk runs as one optimistic read. If an update got in the way, it is redone under the read lock
+     */
+    @Override
+    public void query(int[] lefts, int[] rights, int from, int to, int[] outIdx) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            rmq.query(lefts, rights, from, to, outIdx);
+            if (lock.validate(stamp)) {
+                return;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            rmq.query(lefts, rights, from, to, outIdx);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The offline sweep reads many values, so it takes the read lock for its whole duration
+     * instead of validating each read. Callers keep the span of a batch small, see TaskSolver
+     */
+    @Override
+    public void queryOffline(int[] lefts, int[] rights, int from, int to, int[] out) {
+        long stamp = lock.readLock();
+        try {
+            rmq.queryOffline(lefts, rights, from, to, out);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void update(int i, int val) {
+        long stamp = lock.writeLock();
+        try {
+            rmq.update(i, val);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int get(int i) {
+        long stamp = lock.tryOptimisticRead();
+        int value = rmq.get(i);
+        if (stamp != 0 && lock.validate(stamp)) {
+            return value;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return rmq.get(i);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        return rmq.size();
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * Range Minimum Query engine over an integer array
+ *
+ * Query(i, j) - What is the index of the minimum value in the array between indexes i and j (inclusive).
+ *               If the minimum value appears more than once, the leftmost index is returned
+ * Update(i, v) - Index i in the array, now has value v
+ *
+ * Implementations differ in their init / query / update costs. Engines built for read only arrays
+ * may refuse updates with an UnsupportedOperationException
+ *
+ * @author florin.bunau
+ */
+public interface RMQEngine {
+
+    /**
+     * @param i Left index
+     * @param j Right index
+     * @return Index of minimum value in the array in the specified index range
+     */
+    int query(int i, int j);
+
+    /**
+     * Answers the queries [lefts[k], rights[k]] for k in [from, to). Does not allocate per query
+     * Engines may override this to work on several queries at once
+     *
+     * @param lefts Left indexes of the queries
+     * @param rights Right indexes of the queries
+     * @param from First query
+     * @param to Query after the last one
+     * @param outIdx outIdx[k - from] receives the index of the minimum value of query k
+     */
+    default void query(int[] lefts, int[] rights, int from, int to, int[] outIdx) {
+        for (int k = from; k < to; ++k) {
+            outIdx[k - from] = query(lefts[k], rights[k]);
+        }
+    }
+
+    /**
+     * Answers the queries [lefts[k], rights[k]] for k in [from, to) in one offline sweep. See RMQOffline
+     *
+     * @param lefts Left indexes of the queries
+     * @param rights Right indexes of the queries
+     * @param from First query
+     * @param to Query after the last one
+     * @param out out[k - from] receives the index of the minimum value of query k
+     */
+    default void queryOffline(int[] lefts, int[] rights, int from, int to, int[] out) {
+        RMQOffline.query(this, lefts, rights, from, to, out);
+    }
+
+    /**
+     * Update the value at index i to be val
+     * @param i Index to be updated
+     * @param val Value to use in the update
+     */
+    void update(int i, int val);
+
+    /**
+     * @param i Index in the array
+     * @return Value at index i
+     */
+    int get(int i);
+
+    /**
+     * @return Number of values this engine answers queries on
+     */
+    int size();
+}
@@ -0,0 +1,165 @@
+package com.javaadvent.dec9.rmq;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Persists a built RMQCompactSegmentTree to a file, and opens it back memory mapped
+ *
+ * File layout, little endian:
+ *  - header : magic "RMQI" (int), format version (int), N (int), reserved (int)
+ *  - values : N ints
+ *  - padding to a multiple of 8 bytes
+ *  - nodes  : N longs, the internal nodes of the tree. nodes[0] is unused
+ *
+ * Opening a file maps it, there is no heap copy and no rebuild. See RMQMappedSegmentTree
+ *
+ * @author florin.bunau
+ */
+public class RMQIndexFile {
+
+    /**
+     * "RMQI"
+     */
+    static final int MAGIC = 0x524D5149;
+
+    /**
+     * Bumped on every change of the layout
+     */
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 16;
+
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Size of the buffer used to write the file
+     */
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private RMQIndexFile() {
+    }
+
+    /**
+     * @param n Number of values
+     * @return Offset in the file of the nodes section
+     */
+    static long nodesOffset(int n) {
+        long valuesEnd = HEADER_BYTES + 4L * n;
+        return (valuesEnd + 7) & ~7L;
+    }
+
+    /**
+     * Writes the values and the nodes of a tree
+     *
+     * @param tree Tree to persist
+     * @param file File to write, replaced if it exists
+     * @throws IOException If the file can not be written
+     */
+    public static void write(RMQCompactSegmentTree tree, Path file) throws IOException {
+        int n = tree.size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ORDER);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0);
+
+            for (int i = 0; i < n; ++i) {
+                if (buffer.remaining() < 4) {
+                    flush(channel, buffer);
+                }
+                buffer.putInt(tree.values[i]);
+            }
+            flush(channel, buffer);
+
+            long[] nodes = tree.getNodes();
+            channel.position(nodesOffset(n));
+            for (int k = 0; k < n; ++k) {
+                if (buffer.remaining() < 8) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(nodes[k]);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps an index file
+     *
+     * @param file File written by write
+     * @return Read only engine answering queries from the mapped file
+     * @throws IOException If the file can not be read, or is not a supported index file
+     */
+    public static RMQMappedSegmentTree open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated index file header: " + file);
+                }
+            }
+            header.flip();
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an RMQ index file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported RMQ index file version " + version + ": " + file);
+            }
+            int n = header.getInt();
+            if (n < 0) {
+                throw new IOException("Negative value count " + n + " in index file: " + file);
+            }
+            long expected = nodesOffset(n) + 8L * n;
+            if (channel.size() < expected) {
+                throw new IOException("Truncated index file, expected " + expected + " bytes: " + file);
+            }
+
+            // A mapping stays valid after its channel is closed
+            IntBuffer[] values = new IntBuffer[chunks(n, RMQMappedSegmentTree.VALUES_CHUNK_SHIFT)];
+            for (int c = 0; c < values.length; ++c) {
+                long first = (long) c << RMQMappedSegmentTree.VALUES_CHUNK_SHIFT;
+                long count = Math.min(n - first, 1L << RMQMappedSegmentTree.VALUES_CHUNK_SHIFT);
+                values[c] = map(channel, HEADER_BYTES + 4 * first, 4 * count).asIntBuffer();
+            }
+            LongBuffer[] nodes = new LongBuffer[chunks(n, RMQMappedSegmentTree.NODES_CHUNK_SHIFT)];
+            for (int c = 0; c < nodes.length; ++c) {
+                long first = (long) c << RMQMappedSegmentTree.NODES_CHUNK_SHIFT;
+                long count = Math.min(n - first, 1L << RMQMappedSegmentTree.NODES_CHUNK_SHIFT);
+                nodes[c] = map(channel, nodesOffset(n) + 8 * first, 8 * count).asLongBuffer();
+            }
+
+            return new RMQMappedSegmentTree(n, values, nodes);
+        }
+    }
+
+    /**
+     * @return Number of chunks of 2^shift elements needed for n elements
+     */
+    private static int chunks(int n, int shift) {
+        return (int) (((long) n + (1L << shift) - 1) >> shift);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return buffer.order(ORDER);
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.javaadvent.dec9.rmq;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Read only RMQCompactSegmentTree, answering queries straight out of a memory mapped index file
+ *
+ * The values and the nodes stay in the page cache, off the Java heap: opening the index costs a few
+ * mappings instead of a rebuild, and the GC never scans them.
+ * A single mapping is limited to 2GB, so both sections are mapped in chunks of 1GB.
+ * Node ids go up to 2N, they are longs so they do not overflow for N beyond 2^30.
+ *
+ * Init   : O(1), see RMQIndexFile.open
+ * Query  : O(log N)
+ * Update : not supported
+ *
+ * @author florin.bunau
+ */
+public class RMQMappedSegmentTree implements RMQEngine {
+
+    /**
+     * log2 of the number of ints in a values chunk, 1GB
+     */
+    static final int VALUES_CHUNK_SHIFT = 28;
+
+    /**
+     * log2 of the number of longs in a nodes chunk, 1GB
+     */
+    static final int NODES_CHUNK_SHIFT = 27;
+
+    private static final int VALUES_CHUNK_MASK = (1 << VALUES_CHUNK_SHIFT) - 1;
+
+    private static final int NODES_CHUNK_MASK = (1 << NODES_CHUNK_SHIFT) - 1;
+
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Number of values
+     */
+    private final int n;
+
+    /**
+     * Mapped values, by chunk
+     */
+    private final IntBuffer[] values;
+
+    /**
+     * Mapped internal nodes, by chunk. Same packing as RMQCompactSegmentTree : (value << 32) | index
+     */
+    private final LongBuffer[] nodes;
+
+    RMQMappedSegmentTree(int n, IntBuffer[] values, LongBuffer[] nodes) {
+        this.n = n;
+        this.values = values;
+        this.nodes = nodes;
+    }
+
+    private long node(long k) {
+        return nodes[(int) (k >>> NODES_CHUNK_SHIFT)].get((int) k & NODES_CHUNK_MASK);
+    }
+
+    private static long pack(int value, int index) {
+        return ((long) value << 32) | index;
+    }
+
+    @Override
+    public int query(int i, int j) {
+        long result = Long.MAX_VALUE;
+
+        // Leaves are not stored, so the first step reads them straight from values
+        long l = (long) i + n;
+        long r = (long) j + n + 1;
+        if ((l & 1) != 0) {
+            result = pack(get(i), i);
+            ++l;
+        }
+        if ((r & 1) != 0) {
+            --r;
+            int leaf = (int) (r - n);
+            result = Math.min(result, pack(get(leaf), leaf));
+        }
+
+        // Internal nodes from here on
+        for (l >>= 1, r >>= 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                result = Math.min(result, node(l++));
+            }
+            if ((r & 1) != 0) {
+                result = Math.min(result, node(--r));
+            }
+        }
+
+        return (int) (result & INDEX_MASK);
+    }
+
+    /**
+     * The index file is mapped read only
+     */
+    @Override
+    public void update(int i, int val) {
+        throw new UnsupportedOperationException("RMQMappedSegmentTree is read only");
+    }
+
+    @Override
+    public int get(int i) {
+        return values[i >>> VALUES_CHUNK_SHIFT].get(i & VALUES_CHUNK_MASK);
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+}
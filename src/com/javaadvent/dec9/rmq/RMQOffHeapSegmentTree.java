@@ -0,0 +1,210 @@
+package com.javaadvent.dec9.rmq;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Implements a bottom up Segment Tree data structure stored off the Java heap, with long indexes
+ *
+ * Same layout as RMQCompactSegmentTree, leaves at [N .. 2N) and N - 1 stored internal nodes, but:
+ *  - values and nodes live in direct buffers, allocated in 1GB chunks, so the array is not limited
+ *    to 2^31 values and the GC never scans or copies it
+ *  - an index does not fit next to the value in a long anymore, so a node holds only the index of its minimum
+ *
+ * 12 bytes per value. Memory is released when the tree is garbage collected.
+ *
+ * Init   : O(N)
+ * Query  : O(log N)
+ * Update : O(log N)
+ *
+ * @author florin.bunau
+ * See : http://codeforces.com/blog/entry/18051
+ */
+public class RMQOffHeapSegmentTree implements LongRMQEngine, RMQEngine {
+
+    /**
+     * log2 of the number of ints in a values chunk, 1GB
+     */
+    private static final int VALUES_CHUNK_SHIFT = 28;
+
+    /**
+     * log2 of the number of longs in a nodes chunk, 1GB
+     */
+    private static final int NODES_CHUNK_SHIFT = 27;
+
+    private static final long VALUES_CHUNK_MASK = (1L << VALUES_CHUNK_SHIFT) - 1;
+
+    private static final long NODES_CHUNK_MASK = (1L << NODES_CHUNK_SHIFT) - 1;
+
+    /**
+     * Number of values
+     */
+    private final long n;
+
+    /**
+     * Values, by chunk
+     */
+    private final IntBuffer[] values;
+
+    /**
+     * nodes[k] for 1 <= k < N holds the index of the minimum of its children 2k and 2k + 1, by chunk
+     */
+    private final LongBuffer[] nodes;
+
+    /**
+     * @param values Initial values. They are copied off heap
+     */
+    public RMQOffHeapSegmentTree(final int[] values) {
+        this(values.length, new LongToIntFunction() {
+            @Override
+            public int applyAsInt(long i) {
+                return values[(int) i];
+            }
+        });
+    }
+
+    /**
+     * @param n Number of values
+     * @param initialValues Gives the initial value of every index
+     */
+    public RMQOffHeapSegmentTree(long n, LongToIntFunction initialValues) {
+        this.n = n;
+        this.values = new IntBuffer[chunks(n, VALUES_CHUNK_SHIFT)];
+        for (int c = 0; c < values.length; ++c) {
+            long count = Math.min(n - ((long) c << VALUES_CHUNK_SHIFT), 1L << VALUES_CHUNK_SHIFT);
+            values[c] = ByteBuffer.allocateDirect((int) (4 * count)).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        this.nodes = new LongBuffer[chunks(n, NODES_CHUNK_SHIFT)];
+        for (int c = 0; c < nodes.length; ++c) {
+            long count = Math.min(n - ((long) c << NODES_CHUNK_SHIFT), 1L << NODES_CHUNK_SHIFT);
+            nodes[c] = ByteBuffer.allocateDirect((int) (8 * count)).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+
+        for (long i = 0; i < n; ++i) {
+            setValue(i, initialValues.applyAsInt(i));
+        }
+        init();
+    }
+
+    /**
+     * @return Number of chunks of 2^shift elements needed for n elements
+     */
+    private static int chunks(long n, int shift) {
+        long chunks = (n + (1L << shift) - 1) >> shift;
+        if (chunks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many values: " + n);
+        }
+        return (int) chunks;
+    }
+
+    /**
+     * Computes the internal nodes, from the last one up to the root. this is O(n)
+     */
+    private void init() {
+        for (long k = n - 1; k > 0; --k) {
+            setNode(k, minIndexLeftOf(node(2 * k), node(2 * k + 1)));
+        }
+    }
+
+    private void setValue(long i, int val) {
+        values[(int) (i >>> VALUES_CHUNK_SHIFT)].put((int) (i & VALUES_CHUNK_MASK), val);
+    }
+
+    private void setNode(long k, long index) {
+        nodes[(int) (k >>> NODES_CHUNK_SHIFT)].put((int) (k & NODES_CHUNK_MASK), index);
+    }
+
+    /**
+     * @param k Id of the node
+     * @return Index of the minimum of node k. Leaves are not stored, leaf k is index k - N
+     */
+    private long node(long k) {
+        if (k >= n) {
+            return k - n;
+        }
+        return nodes[(int) (k >>> NODES_CHUNK_SHIFT)].get((int) (k & NODES_CHUNK_MASK));
+    }
+
+    /**
+     * @param a Index in values, or -1
+     * @param b Index in values to the right of a, or -1
+     * @return The index holding the smaller value, a on equality
+     */
+    private long minIndexLeftOf(long a, long b) {
+        if (a == -1) {
+            return b;
+        }
+        if (b == -1) {
+            return a;
+        }
+        return get(a) <= get(b) ? a : b;
+    }
+
+    @Override
+    public long query(long i, long j) {
+        // Nodes are found left to right on the left border, and right to left on the right border
+        long leftBest = -1;
+        long rightBest = -1;
+
+        for (long l = i + n, r = j + n + 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) {
+                leftBest = minIndexLeftOf(leftBest, node(l++));
+            }
+            if ((r & 1) != 0) {
+                rightBest = minIndexLeftOf(node(--r), rightBest);
+            }
+        }
+
+        return minIndexLeftOf(leftBest, rightBest);
+    }
+
+    @Override
+    public void update(long i, int val) {
+        setValue(i, val);
+
+        // rebuild tree cache going back up
+        for (long k = (i + n) >> 1; k > 0; k >>= 1) {
+            setNode(k, minIndexLeftOf(node(2 * k), node(2 * k + 1)));
+        }
+    }
+
+    @Override
+    public int get(long i) {
+        return values[(int) (i >>> VALUES_CHUNK_SHIFT)].get((int) (i & VALUES_CHUNK_MASK));
+    }
+
+    @Override
+    public long length() {
+        return n;
+    }
+
+    @Override
+    public int query(int i, int j) {
+        return (int) query((long) i, (long) j);
+    }
+
+    @Override
+    public void update(int i, int val) {
+        update((long) i, val);
+    }
+
+    @Override
+    public int get(int i) {
+        return get((long) i);
+    }
+
+    /**
+     * @return Number of values, if it fits an int. See length()
+     */
+    @Override
+    public int size() {
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalStateException("More than 2^31 values, use length()");
+        }
+        return (int) n;
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.javaadvent.dec9.rmq;
+
+import java.util.Arrays;
+
+/**
+ * Answers a known batch of Range Minimum Queries offline, without walking an index per query
+ *
+ * Tarjan's offline RMQ:
+ *  - queries are bucketed by their right index
+ *  - the values in [min left .. max right] are swept once, left to right, keeping the monotonic stack
+ *    of "minimum so far" candidates. Every value popped off the stack is unioned into the value that popped it
+ *  - when the sweep reaches the right index of a query, find(left) is the stack candidate covering left,
+ *    which is the leftmost minimum of [left .. right]
+ *
+ * Cost : O((span + Q) * alpha) time and 3 * span + Q ints of memory, where span = max right - min left + 1.
+ * The arrays are kept per thread and reused, up to MAX_SCRATCH values. This beats Q index walks when the queries are dense over the span
+ * they cover : against RMQCompactSegmentTree, below about 4 values per query.
+ *
+ * @author florin.bunau
+ * See : http://www.topcoder.com/tc?d1=tutorials&d2=lowestCommonAncestor&module=Static
+ */
+public class RMQOffline {
+
+    /**
+     * Largest span, and number of queries, whose working arrays are kept per thread. Larger sweeps allocate their own,
+     * so a single wide batch does not pin 3 ints per value on every thread that ever ran one
+     */
+    private static final int MAX_SCRATCH = 1 << 16;
+
+    /**
+     * Per thread working arrays, so a sweep does not allocate
+     */
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private RMQOffline() {
+    }
+
+    /**
+     * @param count Number of queries
+     * @param span Number of values covered by the queries
+     * @param spanPerQuery How many values swept are worth one index walk
+     * @return True if the offline sweep is expected to be cheaper than answering the queries one by one
+     */
+    public static boolean isWorthIt(int count, long span, int spanPerQuery) {
+        return span <= (long) count * spanPerQuery;
+    }
+
+    /**
+     * Answers the queries [lefts[k], rights[k]] for k in [from, to)
+     *
+     * @param rmq Engine holding the values
+     * @param lefts Left indexes of the queries
+     * @param rights Right indexes of the queries
+     * @param from First query
+     * @param to Query after the last one
+     * @param out out[k - from] receives the index of the minimum value of query k
+     */
+    public static void query(RMQEngine rmq, int[] lefts, int[] rights, int from, int to, int[] out) {
+        if (from >= to) {
+            return;
+        }
+
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        for (int k = from; k < to; ++k) {
+            lo = Math.min(lo, lefts[k]);
+            hi = Math.max(hi, rights[k]);
+        }
+        int span = hi - lo + 1;
+
+        Scratch scratch = span <= MAX_SCRATCH && to - from <= MAX_SCRATCH ? SCRATCH.get() : new Scratch();
+        scratch.ensure(span, to - from);
+        int[] head = scratch.head;
+        int[] next = scratch.next;
+        int[] parent = scratch.parent;
+        int[] value = scratch.value;
+
+        // Bucket the queries by right index, as singly linked lists
+        Arrays.fill(head, 0, span, -1);
+        for (int k = from; k < to; ++k) {
+            int bucket = rights[k] - lo;
+            next[k - from] = head[bucket];
+            head[bucket] = k - from;
+        }
+
+        // parent[p] >= 0 : p was popped, parent[p] is a later position that dominates it
+        // parent[p] < 0  : p is on the stack, and -2 - parent[p] is the position right below it (-1 for none)
+        int top = -1;
+
+        for (int p = 0; p < span; ++p) {
+            int v = rmq.get(lo + p);
+            value[p] = v;
+
+            // pop everything strictly greater, equal values stay so the leftmost one wins
+            while (top >= 0 && value[top] > v) {
+                int below = -2 - parent[top];
+                parent[top] = p;
+                top = below;
+            }
+            parent[p] = -2 - top;
+            top = p;
+
+            for (int q = head[p]; q != -1; q = next[q]) {
+                out[q] = lo + find(parent, lefts[from + q] - lo);
+            }
+        }
+    }
+
+    /**
+     * @param parent Union find forest, see query
+     * @param x Position to look up
+     * @return The stack position x has been unioned into. Compresses the path
+     */
+    private static int find(int[] parent, int x) {
+        int root = x;
+        while (parent[root] >= 0) {
+            root = parent[root];
+        }
+        while (parent[x] >= 0) {
+            int next = parent[x];
+            parent[x] = root;
+            x = next;
+        }
+        return root;
+    }
+
+    /**
+     * Working arrays of a sweep, grown to the largest span and number of queries seen by the thread, see MAX_SCRATCH
+     */
+    private static class Scratch {
+        int[] head = new int[0];
+        int[] parent = new int[0];
+        int[] value = new int[0];
+        int[] next = new int[0];
+
+        void ensure(int span, int count) {
+            if (head.length < span) {
+                head = new int[span];
+                parent = new int[span];
+                value = new int[span];
+            }
+            if (next.length < count) {
+                next = new int[count];
+            }
+        }
+    }
+
+}
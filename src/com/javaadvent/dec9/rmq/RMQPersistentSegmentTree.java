@@ -0,0 +1,294 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * Implements a persistent (path copying) Segment Tree data structure
+ *
+ * Nodes are never modified once built. An update copies the nodes on the path from the root to the
+ * updated leaf, and publishes the new root. Every root is a complete, consistent version of the array:
+ *  - snapshot() pins the current root. Queries on it are lock free, and never see later updates
+ *  - writers are serialized between themselves, but never wait for readers
+ *  - old versions are plain garbage once no snapshot references their root any more
+ *
+ * To keep the node count (and the copy per update) small, a leaf holds a block of 64 values
+ * instead of a single one. Partial blocks at the ends of a query are scanned.
+ *
+ * Init   : O(N)
+ * Query  : O(log N + 64)
+ * Update : O(log N + 64), allocates log(N / 64) nodes and one block
+ *
+ * @author florin.bunau
+ * See : http://en.wikipedia.org/wiki/Persistent_data_structure
+ */
+public class RMQPersistentSegmentTree implements RMQSnapshotEngine {
+
+    /**
+     * log2 of the number of values in a leaf
+     */
+    private static final int BLOCK_SHIFT = 6;
+
+    /**
+     * Number of values in a leaf
+     */
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    /**
+     * Latest published version
+     */
+    private volatile Snapshot current;
+
+    /**
+     * @param values Initial values. They are copied, the array is not modified by updates
+     */
+    public RMQPersistentSegmentTree(int[] values) {
+        int blocks = (values.length + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        current = new Snapshot(blocks == 0 ? null : build(values, 0, blocks - 1), values.length, blocks);
+    }
+
+    /**
+     * @param values Initial values
+     * @param lo First block of the node
+     * @param hi Last block of the node
+     * @return Node covering the blocks [lo .. hi]
+     */
+    private static Node build(int[] values, int lo, int hi) {
+        if (lo == hi) {
+            int start = lo << BLOCK_SHIFT;
+            int end = Math.min(start + BLOCK_SIZE, values.length);
+            int[] block = new int[end - start];
+            System.arraycopy(values, start, block, 0, block.length);
+            return new Leaf(block, start);
+        }
+        int mid = (lo + hi) / 2;
+        return new Inner(build(values, lo, mid), build(values, mid + 1, hi));
+    }
+
+    @Override
+    public RMQEngine snapshot() {
+        return current;
+    }
+
+    @Override
+    public int query(int i, int j) {
+        return current.query(i, j);
+    }
+
+    @Override
+    public int get(int i) {
+        return current.get(i);
+    }
+
+    /**
+     * Copies the path to index i and publishes the new version
+     */
+    @Override
+    public synchronized void update(int i, int val) {
+        Snapshot version = current;
+        version.checkNotEmpty(i);
+        current = new Snapshot(update(version.root, 0, version.blocks - 1, i, val), version.size, version.blocks);
+    }
+
+    /**
+     * @param node Node to copy
+     * @param lo First block of the node
+     * @param hi Last block of the node
+     * @param i Index to be updated
+     * @param val Value to which to update the index
+     * @return Copy of node, with index i updated
+     */
+    private static Node update(Node node, int lo, int hi, int i, int val) {
+        if (lo == hi) {
+            Leaf leaf = (Leaf) node;
+            int[] block = leaf.values.clone();
+            block[i - leaf.start] = val;
+            return new Leaf(block, leaf.start);
+        }
+        Inner inner = (Inner) node;
+        int mid = (lo + hi) / 2;
+        if ((i >> BLOCK_SHIFT) <= mid) {
+            return new Inner(update(inner.left, lo, mid, i, val), inner.right);
+        }
+        return new Inner(inner.left, update(inner.right, mid + 1, hi, i, val));
+    }
+
+    @Override
+    public int size() {
+        return current.size;
+    }
+
+    /**
+     * Immutable node. Knows the index and value of the minimum below it
+     */
+    private static abstract class Node {
+
+        final int minIndex;
+        final int minValue;
+
+        Node(int minIndex, int minValue) {
+            this.minIndex = minIndex;
+            this.minValue = minValue;
+        }
+    }
+
+    private static final class Inner extends Node {
+
+        final Node left;
+        final Node right;
+
+        Inner(Node left, Node right) {
+            // On equal values keep the leftmost index
+            super(left.minValue <= right.minValue ? left.minIndex : right.minIndex,
+                  Math.min(left.minValue, right.minValue));
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class Leaf extends Node {
+
+        /**
+         * Block of values, never modified after construction
+         */
+        final int[] values;
+        /**
+         * Index in the array of values[0]
+         */
+        final int start;
+
+        Leaf(int[] values, int start) {
+            this(values, start, scan(values, 0, values.length - 1));
+        }
+
+        private Leaf(int[] values, int start, int min) {
+            super(start + min, values[min]);
+            this.values = values;
+            this.start = start;
+        }
+
+        /**
+         * @return Position of the leftmost minimum of values[from .. to]
+         */
+        static int scan(int[] values, int from, int to) {
+            int min = from;
+            for (int k = from + 1; k <= to; ++k) {
+                if (values[k] < values[min]) {
+                    min = k;
+                }
+            }
+            return min;
+        }
+    }
+
+    /**
+     * One version of the tree. Read only
+     */
+    private static final class Snapshot implements RMQEngine {
+
+        /**
+         * null for an empty array
+         */
+        final Node root;
+        final int size;
+        final int blocks;
+
+        Snapshot(Node root, int size, int blocks) {
+            this.root = root;
+            this.size = size;
+            this.blocks = blocks;
+        }
+
+        @Override
+        public int query(int i, int j) {
+            checkNotEmpty(i);
+            return (int) (query(root, 0, blocks - 1, i, j) & 0xFFFFFFFFL);
+        }
+
+        /**
+         * An empty array has no root, and every index is out of bounds
+         */
+        void checkNotEmpty(int i) {
+            if (root == null) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length 0");
+            }
+        }
+
+        /**
+         * Reading values goes down the tree, so the offline sweep is not worth it on a snapshot.
+         * Answers the queries one by one
+         */
+        @Override
+        public void queryOffline(int[] lefts, int[] rights, int from, int to, int[] out) {
+            for (int k = from; k < to; ++k) {
+                out[k - from] = query(lefts[k], rights[k]);
+            }
+        }
+
+        /**
+         * @param node Current node
+         * @param lo First block of the node
+         * @param hi Last block of the node
+         * @param i Initial query interval left index
+         * @param j Initial query interval right index
+         * @return Minimum of the part of [i .. j] below node, packed as (value << 32) | index
+         *         so the smaller long is the leftmost minimum
+         */
+        private long query(Node node, int lo, int hi, int i, int j) {
+            int start = lo << BLOCK_SHIFT;
+            int end = Math.min((hi + 1) << BLOCK_SHIFT, size) - 1;
+            if (i <= start && end <= j) {
+                return pack(node.minValue, node.minIndex);
+            }
+            if (lo == hi) {
+                Leaf leaf = (Leaf) node;
+                int min = Leaf.scan(leaf.values, Math.max(i, start) - start, Math.min(j, end) - start);
+                return pack(leaf.values[min], start + min);
+            }
+
+            int mid = (lo + hi) / 2;
+            Inner inner = (Inner) node;
+            long result = Long.MAX_VALUE;
+            if ((i >> BLOCK_SHIFT) <= mid) {
+                result = query(inner.left, lo, mid, i, j);
+            }
+            if ((j >> BLOCK_SHIFT) > mid) {
+                result = Math.min(result, query(inner.right, mid + 1, hi, i, j));
+            }
+            return result;
+        }
+
+        private static long pack(int value, int index) {
+            return ((long) value << 32) | index;
+        }
+
+        @Override
+        public void update(int i, int val) {
+            throw new UnsupportedOperationException("Snapshots are read only");
+        }
+
+        @Override
+        public int get(int i) {
+            checkNotEmpty(i);
+            Node node = root;
+            int lo = 0, hi = blocks - 1;
+            int block = i >> BLOCK_SHIFT;
+            while (lo != hi) {
+                int mid = (lo + hi) / 2;
+                if (block <= mid) {
+                    node = ((Inner) node).left;
+                    hi = mid;
+                }
+                else {
+                    node = ((Inner) node).right;
+                    lo = mid + 1;
+                }
+            }
+            Leaf leaf = (Leaf) node;
+            return leaf.values[i - leaf.start];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+}
@@ -1,5 +1,8 @@
 package com.javaadvent.dec9.rmq;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Implements a Segment Tree data structure
  * 
@@ -7,15 +10,20 @@ package com.javaadvent.dec9.rmq;
  * Query(i, j) - What is the index of the minimum value in the array between indexes i and j
  * Update(i, v) - Index i in the array, now has value v
  * 
- * Init   : O(N)
- * Query  : O(log N)
+ * Init   : O(N), can be split across a ForkJoinPool
+ * Query  : O(log N), non recursive
  * Update : O(log N)
  * 
  * @author florin.bunau
  * See : http://www.topcoder.com/tc?d1=tutorials&d2=lowestCommonAncestor&module=Static
  * See : http://en.wikipedia.org/wiki/Segment_tree
  */
-public class RMQSegmentTree {
+public class RMQSegmentTree implements RMQEngine {
+    
+    /**
+     * Subtrees with fewer values than this are built serially by a parallel init
+     */
+    private static final int PARALLEL_INIT_THRESHOLD = 1 << 16;
     
     /**
      * tree[k] Holds the index of the smallest element from values[k_start] .. values[k_end]
@@ -34,6 +42,14 @@ public class RMQSegmentTree {
     public int[] values;
 
     public RMQSegmentTree(int[] values) {
+        this(values, null);
+    }
+
+    /**
+     * @param values Values to be queried and updated
+     * @param pool Pool used to build independent subtrees in parallel. The tree is identical to a serial build
+     */
+    public RMQSegmentTree(int[] values, ForkJoinPool pool) {
         int log2n = (int) (Math.log(values.length) / Math.log(2));
 
         this.values = values;
@@ -41,7 +57,12 @@ public class RMQSegmentTree {
         // Binary tree of intervals
         tree = new int[1 << (log2n + 2)];
 
-        init(1, 0, values.length-1);
+        if (pool == null) {
+            init(1, 0, values.length-1);
+        }
+        else {
+            pool.invoke(new InitSubtree(1, 0, values.length-1));
+        }
     }
 
     /**
@@ -69,39 +90,38 @@ public class RMQSegmentTree {
     }
 
     /**
-     * @param node Id of the node
-     * @param left Current considered interval left index
-     * @param right Current considered interval right index 
-     * @param i Initial query interval left index
-     * @param j Initial query interval right index
-     * @return The index in the array that holds the minimum value of values between i and j index
+     * Parallel version of init. Splits a node into its two children until a subtree 
+     * is below PARALLEL_INIT_THRESHOLD, and builds those with init
      */
-    private int query(int node, int left, int right, int i, int j) {
-        if (i <= left && right <= j) {
-            return tree[node];
-        }
-        else {
+    private class InitSubtree extends RecursiveAction {
 
-            int mid = (left + right) / 2;
-            int minIndexHalf1 = -1, minIndexHalf2 = -1;
+        private static final long serialVersionUID = 1L;
 
-            if (i <= mid) {
-                minIndexHalf1 = query(2 * node, left, mid, i, j);
-            }
-            if (j > mid) {
-                minIndexHalf2 = query(2 * node + 1, mid + 1, right, i, j);
-            }
+        final int node;
+        final int left;
+        final int right;
 
-            if (minIndexHalf1 == -1) {
-                return minIndexHalf2;
-            }
-            if (minIndexHalf2 == -1) {
-                return minIndexHalf1;
+        InitSubtree(int node, int left, int right) {
+            this.node = node;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        protected void compute() {
+            if (right - left < PARALLEL_INIT_THRESHOLD) {
+                init(node, left, right);
             }
-            if (values[minIndexHalf1] <= values[minIndexHalf2]) {
-                return minIndexHalf1;
+            else {
+                int mid = (left + right) / 2;
+                invokeAll(new InitSubtree(2 * node, left, mid),
+                          new InitSubtree(2 * node + 1, mid + 1, right));
+
+                int minIndexHalf1 = tree[2 * node];
+                int minIndexHalf2 = tree[2 * node + 1];
+
+                tree[node] = (values[minIndexHalf1] <= values[minIndexHalf2]) ? minIndexHalf1 : minIndexHalf2;
             }
-            return minIndexHalf2;
         }
     }
 
@@ -129,29 +149,118 @@ public class RMQSegmentTree {
                 update(2 * node + 1, mijl + 1, right, i, val);
             }
             
-            // rebuild tree cache going back up
-            tree[node] = (values[tree[2 * node]] < values[tree[2 * node + 1]]) 
+            // rebuild tree cache going back up. On equal values keep the leftmost index, same as init
+            tree[node] = (values[tree[2 * node]] <= values[tree[2 * node + 1]]) 
                           ? tree[2 * node]
                           : tree[2 * node + 1];
         }
     }
     
     /**
-     * @param i Left index
-     * @param j Right index
-     * @return Index of minimum value in the array in the specified index range
+     * Non recursive query. Descends from the root while [i, j] fits in one child, 
+     * then walks the left and right borders of [i, j] down to the leaves
      */
+    @Override
     public int query(int i, int j) {
-        return query(1, 0, values.length-1, i, j);
+        int node = 1, left = 0, right = values.length - 1;
+        while (true) {
+            if (i <= left && right <= j) {
+                return tree[node];
+            }
+            int mid = (left + right) / 2;
+            if (j <= mid) {
+                node = 2 * node;
+                right = mid;
+            }
+            else if (i > mid) {
+                node = 2 * node + 1;
+                left = mid + 1;
+            }
+            else {
+                // [i, mid] is a suffix of the left child, [mid + 1, j] a prefix of the right child
+                return minIndexLeftOf(leftBorder(2 * node, left, mid, i), rightBorder(2 * node + 1, mid + 1, right, j));
+            }
+        }
     }
-    
+
     /**
-     * Update the value at index i to be val
-     * @param i Index to be updated
-     * @param val Value to use in the update
+     * @param node Node whose range ends inside the query
+     * @param left Node interval left index
+     * @param right Node interval right index
+     * @param i Query interval left index
+     * @return Index of the minimum value of [i, right]
+     */
+    private int leftBorder(int node, int left, int right, int i) {
+        // Nodes are found right to left. On equal values keep the one further left
+        int best = -1;
+        while (i > left) {
+            int mid = (left + right) / 2;
+            if (i <= mid) {
+                best = minIndexLeftOf(tree[2 * node + 1], best);
+                node = 2 * node;
+                right = mid;
+            }
+            else {
+                node = 2 * node + 1;
+                left = mid + 1;
+            }
+        }
+        return minIndexLeftOf(tree[node], best);
+    }
+
+    /**
+     * @param node Node whose range starts inside the query
+     * @param left Node interval left index
+     * @param right Node interval right index
+     * @param j Query interval right index
+     * @return Index of the minimum value of [left, j]
+     */
+    private int rightBorder(int node, int left, int right, int j) {
+        // Nodes are found left to right. On equal values keep the one already found
+        int best = -1;
+        while (j < right) {
+            int mid = (left + right) / 2;
+            if (j > mid) {
+                best = minIndexLeftOf(best, tree[2 * node]);
+                node = 2 * node + 1;
+                left = mid + 1;
+            }
+            else {
+                node = 2 * node;
+                right = mid;
+            }
+        }
+        return minIndexLeftOf(best, tree[node]);
+    }
+
+    /**
+     * @param a Index in values, or -1
+     * @param b Index in values to the right of a, or -1
+     * @return The index holding the smaller value, a on equality
      */
+    private int minIndexLeftOf(int a, int b) {
+        if (a == -1) {
+            return b;
+        }
+        if (b == -1) {
+            return a;
+        }
+        return values[a] <= values[b] ? a : b;
+    }
+
+    @Override
     public void update(int i, int val) {
         update(1, 0, values.length-1, i, val);
     }
+
+    @Override
+    public int get(int i) {
+        return values[i];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
     
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * RMQ engine that can hand out immutable snapshots of itself
+ *
+ * A snapshot answers queries on the array as it was when the snapshot was taken, no matter
+ * what updates happen afterwards. Readers of a snapshot never block writers, and never see a half applied update.
+ * Updates made after the snapshot was taken, by the snapshot's holder included, are not visible through it.
+ *
+ * @author florin.bunau
+ */
+public interface RMQSnapshotEngine extends RMQEngine {
+
+    /**
+     * @return Read only view of the current version of the array. Updating it throws an UnsupportedOperationException
+     */
+    RMQEngine snapshot();
+}
@@ -0,0 +1,167 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * Implements a block decomposed Sparse Table for read only arrays
+ *
+ * A plain sparse table needs N * log N indexes, which is too much for a large array.
+ * So the array is split into blocks of 32 values:
+ *  - a sparse table is kept only over the minimum of each block
+ *  - inside a block, for each index j a 32 bit mask remembers which indexes of the block are
+ *    still on the "monotonic stack" at j. The lowest bit set at or above i is the minimum of [i .. j]
+ *
+ * Query(i, j) is answered by at most two in block lookups and one sparse table lookup.
+ *
+ * Init   : O(N)
+ * Query  : O(1)
+ * Update : not supported
+ *
+ * @author florin.bunau
+ * See : http://en.wikipedia.org/wiki/Range_minimum_query
+ * See : http://www.topcoder.com/tc?d1=tutorials&d2=lowestCommonAncestor&module=Static
+ */
+public class RMQSparseTable implements RMQEngine {
+
+    /**
+     * log2 of the block size
+     */
+    private static final int BLOCK_SHIFT = 5;
+
+    /**
+     * Values in a block. Matches the width of an int mask
+     */
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    /**
+     * An array of values to be queried
+     */
+    public final int[] values;
+
+    /**
+     * inBlockMask[j] bit b is set if index (blockStart(j) + b) is the minimum of [blockStart(j) + b .. j]
+     */
+    private final int[] inBlockMask;
+
+    /**
+     * sparse[level][b] Holds the index of the smallest element in blocks b .. b + 2^level - 1
+     */
+    private final int[][] sparse;
+
+    public RMQSparseTable(int[] values) {
+        this.values = values;
+        this.inBlockMask = new int[values.length];
+
+        int blocks = (values.length + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        int levels = 32 - Integer.numberOfLeadingZeros(Math.max(blocks, 1));
+        sparse = new int[levels][];
+        sparse[0] = new int[blocks];
+
+        initBlocks();
+        initSparseTable();
+    }
+
+    /**
+     * Computes the in block masks, and the minimum of every block. this is O(n)
+     */
+    private void initBlocks() {
+        for (int block = 0; block < sparse[0].length; ++block) {
+            int blockStart = block << BLOCK_SHIFT;
+            int blockEnd = Math.min(blockStart + BLOCK_SIZE, values.length);
+            int mask = 0;
+
+            for (int j = blockStart; j < blockEnd; ++j) {
+                // pop everything strictly greater than values[j]. Equal values stay, so the leftmost one wins
+                while (mask != 0) {
+                    int top = blockStart + 31 - Integer.numberOfLeadingZeros(mask);
+                    if (values[top] <= values[j]) {
+                        break;
+                    }
+                    mask ^= 1 << (top - blockStart);
+                }
+                mask |= 1 << (j - blockStart);
+                inBlockMask[j] = mask;
+            }
+
+            // The bottom of the stack at the end of the block is the minimum of the block
+            sparse[0][block] = blockStart + Integer.numberOfTrailingZeros(inBlockMask[blockEnd - 1]);
+        }
+    }
+
+    /**
+     * Computes the sparse table over block minimums. this is O(n / BLOCK_SIZE * log(n / BLOCK_SIZE))
+     */
+    private void initSparseTable() {
+        int blocks = sparse[0].length;
+        for (int level = 1; level < sparse.length; ++level) {
+            int[] prev = sparse[level - 1];
+            int[] cur = new int[blocks - (1 << level) + 1];
+            int half = 1 << (level - 1);
+            for (int b = 0; b < cur.length; ++b) {
+                cur[b] = minIndex(prev[b], prev[b + half]);
+            }
+            sparse[level] = cur;
+        }
+    }
+
+    /**
+     * @param i Left index
+     * @param j Right index, in the same block as i
+     * @return Index of the minimum value between i and j
+     */
+    private int queryInBlock(int i, int j) {
+        int blockStart = j & ~(BLOCK_SIZE - 1);
+        return blockStart + Integer.numberOfTrailingZeros(inBlockMask[j] & (-1 << (i - blockStart)));
+    }
+
+    /**
+     * @param a Index into values
+     * @param b Index into values, to the right of a
+     * @return The index holding the smaller value, a on equality
+     */
+    private int minIndex(int a, int b) {
+        return values[a] <= values[b] ? a : b;
+    }
+
+    @Override
+    public int query(int i, int j) {
+        int blockI = i >> BLOCK_SHIFT;
+        int blockJ = j >> BLOCK_SHIFT;
+
+        if (blockI == blockJ) {
+            return queryInBlock(i, j);
+        }
+
+        // Suffix of i's block, and prefix of j's block
+        int result = queryInBlock(i, (blockI << BLOCK_SHIFT) + BLOCK_SIZE - 1);
+        int right = queryInBlock(blockJ << BLOCK_SHIFT, j);
+
+        // Full blocks in between, two overlapping power of 2 ranges from the sparse table
+        if (blockI + 1 < blockJ) {
+            int from = blockI + 1;
+            int to = blockJ - 1;
+            int level = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+            int middle = minIndex(sparse[level][from], sparse[level][to - (1 << level) + 1]);
+            result = minIndex(result, middle);
+        }
+
+        return minIndex(result, right);
+    }
+
+    /**
+     * The sparse table is built for read only arrays
+     */
+    @Override
+    public void update(int i, int val) {
+        throw new UnsupportedOperationException("RMQSparseTable is read only");
+    }
+
+    @Override
+    public int get(int i) {
+        return values[i];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+}
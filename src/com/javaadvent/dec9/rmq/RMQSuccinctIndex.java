@@ -0,0 +1,475 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * Implements a succinct RMQ index for read only arrays, 2N + o(N) bits besides the values
+ *
+ * The array is encoded as the balanced parentheses of its 2d-Min-Heap : the parent of index k is the
+ * nearest index to its left holding a value smaller than or equal to values[k], or a virtual root.
+ * Walking the array with a stack of those parents, every index popped writes ')' and every index pushed
+ * writes '(', so index k owns the (k + 1)-th '(' (the root owns the first). 1 bit per parenthesis.
+ *
+ * For i < j, with x and y the '(' of i and j, let z be the rightmost position of the minimum excess
+ * (opened minus closed parentheses) in (x, y]. If that excess is not below the one at x, i is the minimum.
+ * Otherwise the minimum m opens right after z : everything in [i, m) was popped to make room for m,
+ * and nothing after m pops it. Leftmost on equal values, as they do not pop each other.
+ *
+ * Next to the parentheses:
+ *  - per block of BLOCK_BITS bits, the number of '(' before it, for rank, and its minimum excess
+ *  - a sparse table over the minimum excess of superblocks of SUPERBLOCK_BLOCKS blocks
+ *  - the block of every SELECT_SAMPLE-th '(', to start select from
+ * Scans inside a block go a byte at a time, through tables of excess per byte.
+ * That is about 2.5 bits per value in total, where RMQSegmentTree needs 4 to 8 ints and RMQCompactSegmentTree 2.
+ * Queries are slower than with those trees, select, rank and the scans cost more than walking log N nodes.
+ *
+ * Init   : O(N)
+ * Query  : O(1), a few block scans and sparse table lookups
+ * Update : not supported
+ *
+ * @author florin.bunau
+ * See : https://doi.org/10.1137/090779759 (Fischer, Heun : Space-Efficient Preprocessing Schemes for Range Minimum Queries)
+ * See : https://arxiv.org/abs/1601.05631 (Ferrada, Navarro : Improved Range Minimum Queries)
+ */
+public class RMQSuccinctIndex implements RMQEngine {
+
+    /**
+     * log2 of the bits in a block
+     */
+    private static final int BLOCK_SHIFT = 9;
+
+    /**
+     * Bits in a block. 8 longs
+     */
+    private static final int BLOCK_BITS = 1 << BLOCK_SHIFT;
+
+    /**
+     * log2 of the blocks in a superblock
+     */
+    private static final int SUPERBLOCK_SHIFT = 3;
+
+    private static final int SUPERBLOCK_BLOCKS = 1 << SUPERBLOCK_SHIFT;
+
+    /**
+     * log2 of the number of '(' between two select samples
+     */
+    private static final int SELECT_SHIFT = 9;
+
+    private static final int SELECT_SAMPLE = 1 << SELECT_SHIFT;
+
+    /**
+     * Per byte value : excess of its 8 bits, least significant first
+     */
+    private static final byte[] BYTE_EXCESS = new byte[256];
+
+    /**
+     * Per byte value : minimum excess after one of its bits, relative to the excess before it
+     */
+    private static final byte[] BYTE_MIN = new byte[256];
+
+    /**
+     * Per byte value : offset of the rightmost bit reaching BYTE_MIN
+     */
+    private static final byte[] BYTE_MIN_POS = new byte[256];
+
+    static {
+        for (int v = 0; v < 256; ++v) {
+            int excess = 0;
+            int min = Integer.MAX_VALUE;
+            int minPos = 0;
+            for (int b = 0; b < 8; ++b) {
+                excess += ((v >>> b) & 1) != 0 ? 1 : -1;
+                if (excess <= min) {
+                    min = excess;
+                    minPos = b;
+                }
+            }
+            BYTE_EXCESS[v] = (byte) excess;
+            BYTE_MIN[v] = (byte) min;
+            BYTE_MIN_POS[v] = (byte) minPos;
+        }
+    }
+
+    /**
+     * An array of values to be queried
+     */
+    public final int[] values;
+
+    /**
+     * The parentheses, '(' is a 1 bit. Bit p is bit (p & 63) of bits[p >> 6]
+     */
+    private final long[] bits;
+
+    /**
+     * Number of parentheses
+     */
+    private final int length;
+
+    /**
+     * blockRank[b] holds the number of '(' before block b. One extra entry at the end
+     */
+    private final int[] blockRank;
+
+    /**
+     * blockMin[b] holds the minimum excess after a bit of block b
+     */
+    private final int[] blockMin;
+
+    /**
+     * superMin[s] holds the minimum excess after a bit of superblock s
+     */
+    private final int[] superMin;
+
+    /**
+     * sparse[level][s] holds the rightmost superblock with the smallest superMin in s .. s + 2^level - 1.
+     * Level 0 is s itself and is not stored
+     */
+    private final int[][] sparse;
+
+    /**
+     * selectSamples[t] holds the block of the (t * SELECT_SAMPLE)-th '('
+     */
+    private final int[] selectSamples;
+
+    public RMQSuccinctIndex(int[] values) {
+        this.values = values;
+        int n = values.length;
+        this.length = 2 * n + 2;
+        this.bits = new long[(length + 63) >> 6];
+
+        int blocks = (length + BLOCK_BITS - 1) >> BLOCK_SHIFT;
+        blockRank = new int[blocks + 1];
+        blockMin = new int[blocks];
+        int superblocks = (blocks + SUPERBLOCK_BLOCKS - 1) >> SUPERBLOCK_SHIFT;
+        superMin = new int[superblocks];
+        selectSamples = new int[((n + 1) >> SELECT_SHIFT) + 2];
+
+        initParentheses();
+        initBlocks();
+
+        int levels = 32 - Integer.numberOfLeadingZeros(Math.max(superblocks, 1));
+        sparse = new int[levels][];
+        initSparseTable();
+    }
+
+    /**
+     * Writes the parentheses of the 2d-Min-Heap. this is O(n)
+     */
+    private void initParentheses() {
+        int[] stack = new int[values.length];
+        int top = 0;
+        int pos = 0;
+
+        // The virtual root
+        setOpen(pos++);
+        for (int k = 0; k < values.length; ++k) {
+            // pop everything strictly greater than values[k]. Equal values stay, so the leftmost one wins
+            while (top > 0 && values[stack[top - 1]] > values[k]) {
+                --top;
+                ++pos;
+            }
+            stack[top++] = k;
+            setOpen(pos++);
+        }
+        // The remaining indexes and the root close, and are already 0 bits
+    }
+
+    private void setOpen(int p) {
+        bits[p >> 6] |= 1L << p;
+    }
+
+    /**
+     * Computes the rank and the minimum excess of every block, and the select samples. this is O(n)
+     */
+    private void initBlocks() {
+        int rank = 0;
+        int excess = 0;
+        for (int b = 0; b < blockMin.length; ++b) {
+            blockRank[b] = rank;
+            int min = Integer.MAX_VALUE;
+            int end = Math.min((b + 1) << BLOCK_SHIFT, length);
+            for (int p = b << BLOCK_SHIFT; p < end; ++p) {
+                if (isOpen(p)) {
+                    if ((rank & (SELECT_SAMPLE - 1)) == 0) {
+                        selectSamples[rank >> SELECT_SHIFT] = b;
+                    }
+                    ++rank;
+                    ++excess;
+                }
+                else {
+                    --excess;
+                }
+                min = Math.min(min, excess);
+            }
+            blockMin[b] = min;
+        }
+        blockRank[blockMin.length] = rank;
+        // Guards for the search after the last sample
+        for (int t = ((rank - 1) >> SELECT_SHIFT) + 1; t < selectSamples.length; ++t) {
+            selectSamples[t] = blockMin.length - 1;
+        }
+
+        for (int s = 0; s < superMin.length; ++s) {
+            int min = Integer.MAX_VALUE;
+            int end = Math.min((s + 1) << SUPERBLOCK_SHIFT, blockMin.length);
+            for (int b = s << SUPERBLOCK_SHIFT; b < end; ++b) {
+                min = Math.min(min, blockMin[b]);
+            }
+            superMin[s] = min;
+        }
+    }
+
+    /**
+     * Computes the sparse table over superblocks. this is O(n / (BLOCK_BITS * SUPERBLOCK_BLOCKS) * log n)
+     */
+    private void initSparseTable() {
+        int superblocks = superMin.length;
+        for (int level = 1; level < sparse.length; ++level) {
+            int[] cur = new int[superblocks - (1 << level) + 1];
+            int half = 1 << (level - 1);
+            for (int s = 0; s < cur.length; ++s) {
+                cur[s] = rightmostMin(sparseAt(level - 1, s), sparseAt(level - 1, s + half));
+            }
+            sparse[level] = cur;
+        }
+    }
+
+    private int sparseAt(int level, int s) {
+        return level == 0 ? s : sparse[level][s];
+    }
+
+    /**
+     * @param a Superblock
+     * @param b Superblock to the right of a
+     * @return The superblock with the smaller minimum, b on equality
+     */
+    private int rightmostMin(int a, int b) {
+        return superMin[b] <= superMin[a] ? b : a;
+    }
+
+    private boolean isOpen(int p) {
+        return (bits[p >> 6] & (1L << p)) != 0;
+    }
+
+    /**
+     * @return Number of '(' in [0, p)
+     */
+    private int rankOpen(int p) {
+        int b = p >> BLOCK_SHIFT;
+        int rank = blockRank[b];
+        int word = p >> 6;
+        for (int w = b << (BLOCK_SHIFT - 6); w < word; ++w) {
+            rank += Long.bitCount(bits[w]);
+        }
+        if ((p & 63) != 0) {
+            rank += Long.bitCount(bits[word] << (64 - (p & 63)));
+        }
+        return rank;
+    }
+
+    /**
+     * @return Position of the k-th '(', counting from 0
+     */
+    private int selectOpen(int k) {
+        // Last block with fewer than k + 1 '(' before it, between the samples around k
+        int lo = selectSamples[k >> SELECT_SHIFT];
+        int hi = selectSamples[(k >> SELECT_SHIFT) + 1];
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockRank[mid] <= k) {
+                lo = mid;
+            }
+            else {
+                hi = mid - 1;
+            }
+        }
+
+        int remaining = k - blockRank[lo];
+        int w = lo << (BLOCK_SHIFT - 6);
+        int count = Long.bitCount(bits[w]);
+        while (count <= remaining) {
+            remaining -= count;
+            count = Long.bitCount(bits[++w]);
+        }
+
+        long word = bits[w];
+        int offset = 0;
+        count = Long.bitCount(word & 0xFF);
+        while (count <= remaining) {
+            remaining -= count;
+            offset += 8;
+            count = Long.bitCount((word >>> offset) & 0xFF);
+        }
+        word >>>= offset;
+        for (; remaining > 0; --remaining) {
+            word &= word - 1;
+        }
+        return (w << 6) + offset + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return Excess after position p
+     */
+    private int excess(int p) {
+        return 2 * rankOpen(p + 1) - (p + 1);
+    }
+
+    /**
+     * Packs an excess and a position, so that the smaller long is the smaller excess, then the rightmost position
+     */
+    private static long pack(int excess, int p) {
+        return ((long) excess << 32) | (~p & 0xFFFFFFFFL);
+    }
+
+    private static int packedExcess(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    private static int packedPosition(long packed) {
+        return ~(int) packed;
+    }
+
+    /**
+     * @param from First position
+     * @param to Last position, in the same block as from
+     * @return Packed minimum excess after a position in [from, to], and the rightmost position reaching it
+     */
+    private long scanMin(int from, int to) {
+        int excess = from == 0 ? 0 : excess(from - 1);
+        long best = Long.MAX_VALUE;
+        int p = from;
+
+        for (; p <= to && (p & 7) != 0; ++p) {
+            excess += isOpen(p) ? 1 : -1;
+            best = Math.min(best, pack(excess, p));
+        }
+        for (; p + 7 <= to; p += 8) {
+            int v = (int) (bits[p >> 6] >>> (p & 63)) & 0xFF;
+            best = Math.min(best, pack(excess + BYTE_MIN[v], p + BYTE_MIN_POS[v]));
+            excess += BYTE_EXCESS[v];
+        }
+        for (; p <= to; ++p) {
+            excess += isOpen(p) ? 1 : -1;
+            best = Math.min(best, pack(excess, p));
+        }
+        return best;
+    }
+
+    /**
+     * @return Packed minimum excess after a position in block b, and the rightmost position reaching it
+     */
+    private long scanBlock(int b) {
+        return scanMin(b << BLOCK_SHIFT, Math.min((b + 1) << BLOCK_SHIFT, length) - 1);
+    }
+
+    /**
+     * @param from First block
+     * @param to Last block
+     * @return Rightmost block with the smallest minimum excess in [from, to], scanning blockMin
+     */
+    private int scanBlocks(int from, int to) {
+        int best = from;
+        for (int b = from + 1; b <= to; ++b) {
+            if (blockMin[b] <= blockMin[best]) {
+                best = b;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param from First block
+     * @param to Last block
+     * @return Rightmost block with the smallest minimum excess in [from, to]
+     */
+    private int minBlock(int from, int to) {
+        int sFrom = from >> SUPERBLOCK_SHIFT;
+        int sTo = to >> SUPERBLOCK_SHIFT;
+        if (sFrom == sTo) {
+            return scanBlocks(from, to);
+        }
+
+        // Left to right, so on equal excess the later block is kept
+        int best = scanBlocks(from, ((sFrom + 1) << SUPERBLOCK_SHIFT) - 1);
+        if (sFrom + 1 < sTo) {
+            int first = sFrom + 1;
+            int last = sTo - 1;
+            int level = 31 - Integer.numberOfLeadingZeros(last - first + 1);
+            int s = rightmostMin(sparseAt(level, first), sparseAt(level, last - (1 << level) + 1));
+            if (superMin[s] <= blockMin[best]) {
+                best = scanBlocks(s << SUPERBLOCK_SHIFT, ((s + 1) << SUPERBLOCK_SHIFT) - 1);
+            }
+        }
+        int right = scanBlocks(sTo << SUPERBLOCK_SHIFT, to);
+        return blockMin[right] <= blockMin[best] ? right : best;
+    }
+
+    /**
+     * @param from First position
+     * @param to Last position
+     * @return Packed minimum excess after a position in [from, to], and the rightmost position reaching it
+     */
+    private long rangeMin(int from, int to) {
+        int bFrom = from >> BLOCK_SHIFT;
+        int bTo = to >> BLOCK_SHIFT;
+        if (bFrom == bTo) {
+            return scanMin(from, to);
+        }
+
+        long best = scanMin(from, ((bFrom + 1) << BLOCK_SHIFT) - 1);
+        if (bFrom + 1 < bTo) {
+            int b = minBlock(bFrom + 1, bTo - 1);
+            if (blockMin[b] <= packedExcess(best)) {
+                best = scanBlock(b);
+            }
+        }
+        return Math.min(best, scanMin(bTo << BLOCK_SHIFT, to));
+    }
+
+    @Override
+    public int query(int i, int j) {
+        if (i == j) {
+            return i;
+        }
+        int x = selectOpen(i + 1);
+        int y = selectOpen(j + 1);
+
+        long min = rangeMin(x + 1, y);
+        // i + 2 parentheses opened up to x, the root included
+        if (packedExcess(min) >= 2 * (i + 2) - (x + 1)) {
+            return i;
+        }
+        // The minimum opens right after z, discount the root
+        return rankOpen(packedPosition(min) + 1) - 1;
+    }
+
+    /**
+     * The index is built for read only arrays
+     */
+    @Override
+    public void update(int i, int val) {
+        throw new UnsupportedOperationException("RMQSuccinctIndex is read only");
+    }
+
+    @Override
+    public int get(int i) {
+        return values[i];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @return Bytes used by the index, not counting the values
+     */
+    public long getIndexBytes() {
+        long bytes = 8L * bits.length + 4L * (blockRank.length + blockMin.length + superMin.length + selectSamples.length);
+        for (int[] level : sparse) {
+            if (level != null) {
+                bytes += 4L * level.length;
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.javaadvent.dec9.rmq;
+
+/**
+ * Plain loop BlockScanner, used when the Vector API is not available
+ *
+ * @author florin.bunau
+ */
+class ScalarBlockScanner implements BlockScanner {
+
+    @Override
+    public int argMin(int[] values, int from, int to) {
+        int best = from;
+        for (int k = from + 1; k < to; ++k) {
+            if (values[k] < values[best]) {
+                best = k;
+            }
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.javaadvent.dec9.rmq;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BlockScanner using SIMD instructions through the Vector API, 8 ints a step with AVX2 and 16 with AVX-512
+ *
+ * Two passes over the run, which fits in L1 :
+ *  - lane wise min of all the vectors, then a min across the lanes gives the minimum value
+ *  - the first vector holding a lane equal to the minimum gives the leftmost index
+ * Values left over after the last full vector are scanned one by one
+ *
+ * jdk.incubator.vector must be resolved at runtime (--add-modules jdk.incubator.vector),
+ * otherwise this class fails to load and RMQBlockEngine falls back to ScalarBlockScanner
+ *
+ * @author florin.bunau
+ * See : https://openjdk.org/jeps/338
+ */
+class VectorBlockScanner implements BlockScanner {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    public int argMin(int[] values, int from, int to) {
+        int vectorEnd = from + SPECIES.loopBound(to - from);
+        if (vectorEnd == from) {
+            return scalarArgMin(values, from, to);
+        }
+
+        IntVector min = IntVector.fromArray(SPECIES, values, from);
+        for (int k = from + LANES; k < vectorEnd; k += LANES) {
+            min = min.min(IntVector.fromArray(SPECIES, values, k));
+        }
+        int minValue = min.reduceLanes(VectorOperators.MIN);
+        for (int k = vectorEnd; k < to; ++k) {
+            minValue = Math.min(minValue, values[k]);
+        }
+
+        for (int k = from; k < vectorEnd; k += LANES) {
+            int lane = IntVector.fromArray(SPECIES, values, k).eq(minValue).firstTrue();
+            if (lane < LANES) {
+                return k + lane;
+            }
+        }
+        // Only in the leftovers
+        return scalarArgMin(values, vectorEnd, to);
+    }
+
+    private static int scalarArgMin(int[] values, int from, int to) {
+        int best = from;
+        for (int k = from + 1; k < to; ++k) {
+            if (values[k] < values[best]) {
+                best = k;
+            }
+        }
+        return best;
+    }
+
+}
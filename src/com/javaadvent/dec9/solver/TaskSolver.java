@@ -1,28 +1,78 @@
 package com.javaadvent.dec9.solver;
 
-import com.javaadvent.dec9.model.Operation;
+import com.javaadvent.dec9.agg.ConcurrentAggregationTree;
+import com.javaadvent.dec9.jfr.SolveRangeEvent;
+import com.javaadvent.dec9.model.OperationBatch;
 import com.javaadvent.dec9.model.Task;
 import com.javaadvent.dec9.result.TaskResultHandler;
-import com.javaadvent.dec9.rmq.RMQSegmentTree;
+import com.javaadvent.dec9.rmq.LongRMQEngine;
+import com.javaadvent.dec9.rmq.RMQEngine;
+import com.javaadvent.dec9.rmq.RMQOffline;
+import com.javaadvent.dec9.rmq.RMQSnapshotEngine;
 
 /**
  * Logic used to handle the solving of a task 
  * 
+ * The same solver is shared by all the threads of a processor. If tasks contain updates, 
+ * the RMQ engine must be safe for concurrent use, see RMQConcurrentEngine, and LongRMQConcurrentEngine
+ * for tasks with indexes beyond 2^31
+ * 
+ * If the engine supports snapshots, each task answers all its queries on the version pinned when it started. 
+ * Its updates still go to the live engine, and are seen by tasks started afterwards. This is snapshot isolation 
+ * without read your writes: a query never sees an update of its own task, even one placed before it, so the 
+ * answers of a task do not depend on how its parts are split or scheduled. Without snapshots, queries read the 
+ * live engine, and see whatever updates of any task landed before them
+ * 
+ * Aggregate and set operations go to an AggregationTree over another array, if one is given. 
+ * It is always wrapped in a ConcurrentAggregationTree, as sets and aggregates of different tasks run at once
+ * 
  * @author florin.bunau
  */
 public class TaskSolver {
     
     /**
-     * Segment tree data structure used for the query and update operations
+     * Queries are handed to the RMQ engine in bulks of this size
+     */
+    private static final int BULK_SIZE = 256;
+    /**
+     * Bulks of at least this many queries are considered for offline batch solving
      */
-    private RMQSegmentTree segmentTree;
+    private static final int OFFLINE_BATCH_MIN_QUERIES = BULK_SIZE / 4;
+    /**
+     * Offline batch solving is used if the queries of a bulk cover at most this many values per query.
+     * Against RMQCompactSegmentTree on 10M values, sweeping 4 values costs about one index walk
+     */
+    private static final int OFFLINE_BATCH_SPAN_PER_QUERY = 2;
+    
+    /**
+     * Per thread buffer receiving the results of a bulk query, so solving does not allocate
+     */
+    private static final ThreadLocal<int[]> bulkResults = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[BULK_SIZE];
+        }
+    };
+    
+    /**
+     * RMQ engine used for the query and update operations (segment tree, sparse table, ...)
+     */
+    private RMQEngine rmq;
     /**
      * We report the results of the task after it has been solved partially or completely here
      */
     private TaskResultHandler taskResultHandler;
+    /**
+     * Dense bulks of queries are answered with one offline sweep instead of one index walk per query
+     */
+    private boolean offlineBatch = true;
+    /**
+     * Tree the aggregate and set operations work on, null if tasks have none
+     */
+    private ConcurrentAggregationTree aggregationTree;
     
-    public TaskSolver(RMQSegmentTree segmentTree, TaskResultHandler taskResultHandler) {
-        this.segmentTree = segmentTree;
+    public TaskSolver(RMQEngine rmq, TaskResultHandler taskResultHandler) {
+        this.rmq = rmq;
         this.taskResultHandler = taskResultHandler;
     }
     
@@ -42,41 +92,182 @@ public class TaskSolver {
      * @param to Ending range of task to solve
      */
     public void solve(Task t, int from, int to) {
-        for (int k = from; k < to; ++k) {
-            solve(t, k);
+        SolveRangeEvent event = new SolveRangeEvent();
+        event.begin();
+        solveRange(t, from, to);
+        if (event.shouldCommit()) {
+            event.taskType = t.getTaskType().name();
+            event.from = from;
+            event.rangeSize = to - from;
+            event.commit();
         }
     }
     
-    private void solve(Task t, int k) {
-        Operation operation = t.getOperations().get(k);
-        switch (operation.getIntervalType()) {
-            case Q : solveQuery(t, k, operation);
-            case U : solveUpdate(t, k, operation);
+    private void solveRange(Task t, int from, int to) {
+        OperationBatch operations = t.getOperations();
+        if (operations.isWide()) {
+            solveWide(t, from, to);
+            return;
+        }
+        RMQEngine view = view(t);
+        int k = from;
+        while (k < to) {
+            if (operations.isQuery(k)) {
+                int end = k + 1;
+                while (end < to && operations.isQuery(end)) {
+                    ++end;
+                }
+                solveQueries(t, view, k, end);
+                k = end;
+            }
+            else if (operations.getType(k) == OperationBatch.UPDATE) {
+                solveUpdate(t, k++);
+            }
+            else {
+                solveAggregation(t, k++);
+            }
         }
     }
     
     /**
-     * Solve a query
+     * Solve a run of queries, handed to the engine a bulk at a time. Bulks whose queries are dense over
+     * the values they cover are solved offline in one sweep, the others are bulk queries.
+     * Deciding per bulk bounds a sweep to BULK_SIZE * OFFLINE_BATCH_SPAN_PER_QUERY values, which is also
+     * how long a concurrent engine holds its read lock for it.
+     * Results are still reported in operation order
      * 
      * @param t Task to solve
-     * @param k Index of query operation within the task 
-     * @param operation Query operation to solve
+     * @param view Engine to query
+     * @param from First query operation
+     * @param to Operation after the last query
      */
-    private void solveQuery(Task t, int k, Operation operation) {
-        Operation.QueryIntervalOperation intervalQ = (Operation.QueryIntervalOperation)operation;
-        int result = segmentTree.query(intervalQ.getLeft(), intervalQ.getRight());
-        taskResultHandler.reportQueryResult(t, k, result);
+    private void solveQueries(Task t, RMQEngine view, int from, int to) {
+        OperationBatch operations = t.getOperations();
+        int[] results = bulkResults.get();
+        for (int bulkFrom = from; bulkFrom < to; bulkFrom += BULK_SIZE) {
+            int bulkTo = Math.min(bulkFrom + BULK_SIZE, to);
+            if (isOfflineWorthIt(operations, bulkFrom, bulkTo)) {
+                view.queryOffline(operations.getLefts(), operations.getRights(), bulkFrom, bulkTo, results);
+            }
+            else {
+                view.query(operations.getLefts(), operations.getRights(), bulkFrom, bulkTo, results);
+            }
+            for (int k = bulkFrom; k < bulkTo; ++k) {
+                taskResultHandler.reportQueryResult(t, k, results[k - bulkFrom]);
+            }
+        }
+    }
+
+    /**
+     * @return True if the queries [from, to) should be solved offline in one sweep
+     */
+    private boolean isOfflineWorthIt(OperationBatch operations, int from, int to) {
+        int count = to - from;
+        if (!offlineBatch || count < OFFLINE_BATCH_MIN_QUERIES) {
+            return false;
+        }
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        for (int k = from; k < to; ++k) {
+            lo = Math.min(lo, operations.getLeft(k));
+            hi = Math.max(hi, operations.getRight(k));
+        }
+        return RMQOffline.isWorthIt(count, (long) hi - lo + 1, OFFLINE_BATCH_SPAN_PER_QUERY);
     }
     
     /**
-     * Solve an update
+     * Solve an update, on the live engine. Queries of the same task keep reading their pinned snapshot, if any
      * 
      * @param t Task to solve
-     * @param k Index of query operation within the task 
-     * @param operation Update operation to solve
+     * @param k Index of update operation within the task 
      */
-    private void solveUpdate(Task t, int k, Operation operation) {
-        // TODO
+    private void solveUpdate(Task t, int k) {
+        OperationBatch operations = t.getOperations();
+        rmq.update(operations.getIndex(k), operations.getVal(k));
+        taskResultHandler.reportUpdateResult(t, k);
+    }
+
+    /**
+     * Solve an aggregate or a set, on the aggregation tree
+     * 
+     * @param t Task to solve
+     * @param k Index of the operation within the task
+     */
+    private void solveAggregation(Task t, int k) {
+        if (aggregationTree == null) {
+            throw new UnsupportedOperationException("Task " + t + " has aggregations, the solver needs an AggregationTree");
+        }
+        OperationBatch operations = t.getOperations();
+        if (operations.getType(k) == OperationBatch.SET) {
+            aggregationTree.updateBits(operations.getIndex(k), operations.getValLong(k));
+            taskResultHandler.reportUpdateResult(t, k);
+        }
+        else if (aggregationTree.getAggregation().isIndex()) {
+            int result = aggregationTree.queryIndex(operations.getLeft(k), operations.getRight(k));
+            taskResultHandler.reportQueryResult(t, k, result);
+        }
+        else if (aggregationTree.isDouble()) {
+            double result = aggregationTree.queryDouble(operations.getLeft(k), operations.getRight(k));
+            taskResultHandler.reportAggregateResult(t, k, result);
+        }
+        else {
+            long result = aggregationTree.queryLong(operations.getLeft(k), operations.getRight(k));
+            taskResultHandler.reportAggregateResult(t, k, result);
+        }
+    }
+
+    /**
+     * Solve a range of a task with indexes beyond 2^31, one operation at a time on a LongRMQEngine
+     * 
+     * @param t Task to solve
+     * @param from Starting range of task to solve
+     * @param to Ending range of task to solve
+     */
+    private void solveWide(Task t, int from, int to) {
+        if (!(rmq instanceof LongRMQEngine)) {
+            throw new UnsupportedOperationException("Task " + t + " has long indexes, the RMQ engine must be a LongRMQEngine, see LongRMQConcurrentEngine");
+        }
+        LongRMQEngine longRmq = (LongRMQEngine) rmq;
+        OperationBatch operations = t.getOperations();
+        for (int k = from; k < to; ++k) {
+            if (operations.isQuery(k)) {
+                long result = longRmq.query(operations.getLeftLong(k), operations.getRightLong(k));
+                taskResultHandler.reportQueryResult(t, k, result);
+            }
+            else if (operations.getType(k) == OperationBatch.UPDATE) {
+                longRmq.update(operations.getIndexLong(k), operations.getVal(k));
+                taskResultHandler.reportUpdateResult(t, k);
+            }
+            else {
+                solveAggregation(t, k);
+            }
+        }
+    }
+
+    /**
+     * @param t Task being solved
+     * @return Engine the task queries: its pinned snapshot if the engine supports them, the live engine otherwise
+     */
+    private RMQEngine view(Task t) {
+        if (rmq instanceof RMQSnapshotEngine) {
+            // Parts of a task share the snapshot of the whole task
+            return t.getRoot().pinSnapshot((RMQSnapshotEngine) rmq);
+        }
+        return rmq;
+    }
+
+    /**
+     * @param offlineBatch Whether dense bulks of queries can be solved offline in one sweep
+     */
+    public void setOfflineBatch(boolean offlineBatch) {
+        this.offlineBatch = offlineBatch;
+    }
+
+    /**
+     * @param aggregationTree Tree the aggregate and set operations work on. Solvers sharing a tree must share the wrapper
+     */
+    public void setAggregationTree(ConcurrentAggregationTree aggregationTree) {
+        this.aggregationTree = aggregationTree;
     }
 
     /**
@@ -86,4 +277,15 @@ public class TaskSolver {
         return taskResultHandler;
     }
 
+    /**
+     * @param taskResultHandler Where the copy reports results
+     * @return Solver on the same RMQ engine and with the same settings, reporting to another handler
+     */
+    public TaskSolver withResultHandler(TaskResultHandler taskResultHandler) {
+        TaskSolver copy = new TaskSolver(rmq, taskResultHandler);
+        copy.offlineBatch = offlineBatch;
+        copy.aggregationTree = aggregationTree;
+        return copy;
+    }
+
 }